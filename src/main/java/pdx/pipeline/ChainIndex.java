@@ -0,0 +1,500 @@
+package pdx.pipeline;
+
+import htsjdk.samtools.util.IOUtil;
+import htsjdk.samtools.util.Interval;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A parsed chain file. Instances are built once per chain path by the {@link ChainIndexRegistry}
+ * and are never modified afterwards, so a single index can be shared by every lifter and thread.
+ * <p>
+ * Chains and their ungapped blocks are held in flat primitive arrays. Each source contig is cut
+ * into segments at every chain start and end, and each segment lists the chains covering it, so
+ * the chains overlapping an interval are found with one binary search over the segments even where
+ * small chains sit inside a large one. The blocks of each chain are then binary searched. Lifting follows htsjdk's {@code LiftOver} exactly: at least 95% of
+ * the interval must map to a single chain, an interval mapping to two chains does not lift, and
+ * the result spans the first to the last block the interval touches.
+ */
+public final class ChainIndex {
+
+    /** Slots of the array filled by {@link #liftOver(int, int, int, int[])}. */
+    public static final int CONTIG = 0;
+    public static final int START = 1;
+    public static final int END = 2;
+    public static final int NEGATIVE_STRAND = 3;
+    public static final int RESULT_SIZE = 4;
+
+    static final double MIN_MATCH = 0.95;
+
+    private static final Logger log = LoggerFactory.getLogger(ChainIndex.class);
+    private static final int[] NONE = new int[0];
+
+    private final String chainPath;
+    private final long loadTimeMillis;
+    private final boolean fromCache;
+    private final byte[] chainDigest;
+
+    // per chain
+    private final int[] chainFromStart;
+    private final int[] chainFromEnd;
+    private final int[] chainToContig;
+    private final int[] chainToSize;
+    private final boolean[] chainToOppositeStrand;
+    private final int[] chainFirstBlock;
+    private final int[] chainBlockCount;
+
+    // per block, grouped by chain and sorted by source start within each chain
+    private final int[] blockFromStart;
+    private final int[] blockToStart;
+    private final int[] blockLength;
+
+    // per source contig id: segment starts, and the chains covering segment k at
+    // segmentChains[segmentChainOffsets[k]] up to segmentChains[segmentChainOffsets[k + 1]]
+    private final int[][] contigSegmentStarts;
+    private final int[][] contigSegmentChainOffsets;
+    private final int[][] contigSegmentChains;
+
+    private ChainIndex(String chainPath, byte[] chainDigest, Builder builder, long loadTimeMillis, boolean fromCache) {
+        this.chainPath = chainPath;
+        this.chainDigest = chainDigest;
+        this.loadTimeMillis = loadTimeMillis;
+        this.fromCache = fromCache;
+        this.chainFromStart = exact(builder.chainFromStart, builder.chains);
+        this.chainFromEnd = exact(builder.chainFromEnd, builder.chains);
+        this.chainToContig = exact(builder.chainToContig, builder.chains);
+        this.chainToSize = exact(builder.chainToSize, builder.chains);
+        this.chainToOppositeStrand = exact(builder.chainToOppositeStrand, builder.chains);
+        this.chainFirstBlock = exact(builder.chainFirstBlock, builder.chains);
+        this.chainBlockCount = exact(builder.chainBlockCount, builder.chains);
+        this.blockFromStart = exact(builder.blockFromStart, builder.blocks);
+        this.blockToStart = exact(builder.blockToStart, builder.blocks);
+        this.blockLength = exact(builder.blockLength, builder.blocks);
+        this.contigSegmentStarts = new int[Contigs.size()][];
+        this.contigSegmentChainOffsets = new int[Contigs.size()][];
+        this.contigSegmentChains = new int[Contigs.size()][];
+        indexChainsByContig(builder.chainFromContig);
+    }
+
+    /**
+     * Builds the index from the compiled cache of the chain file when it is current, otherwise
+     * hashes and parses the chain file and refreshes the cache.
+     */
+    public static ChainIndex load(String chainPath) {
+        long start = System.nanoTime();
+        Path chain = Paths.get(chainPath);
+        Builder builder = ChainIndexCache.read(chain);
+        boolean fromCache = builder != null;
+        byte[] digest;
+        if (fromCache) {
+            digest = builder.chainDigest;
+        } else {
+            digest = digestOf(chain);
+            builder = parse(chainPath);
+            writeCache(chain, digest, builder);
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        log.info(String.format("Loaded chain file %s from %s in %d ms: %d chains, %d blocks",
+                chainPath, fromCache ? "its compiled index" : "text", elapsed, builder.chains, builder.blocks));
+        return new ChainIndex(chainPath, digest, builder, elapsed, fromCache);
+    }
+
+    /**
+     * The first {@code length} values, without copying arrays read from a cache at their exact size.
+     */
+    private static int[] exact(int[] values, int length) {
+        return values.length == length ? values : Arrays.copyOf(values, length);
+    }
+
+    private static boolean[] exact(boolean[] values, int length) {
+        return values.length == length ? values : Arrays.copyOf(values, length);
+    }
+
+    static Builder parse(String chainPath) {
+        Builder builder = new Builder();
+        try (BufferedReader reader = IOUtil.openFileForBufferedReading(new File(chainPath))) {
+            builder.read(reader);
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Could not read chain file %s", chainPath), e);
+        }
+        return builder;
+    }
+
+    private static byte[] digestOf(Path chain) {
+        try {
+            return Digests.sha256(chain);
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Could not read chain file %s", chain), e);
+        }
+    }
+
+    private static void writeCache(Path chain, byte[] digest, Builder builder) {
+        try {
+            ChainIndexCache.write(chain, digest, builder);
+        } catch (IOException e) {
+            log.warn(String.format("Could not write chain index for %s: %s", chain, e));
+        }
+    }
+
+    private void indexChainsByContig(int[] chainFromContig) {
+        int chains = chainFromStart.length;
+        Integer[] order = new Integer[chains];
+        for (int i = 0; i < chains; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Integer.compare(chainFromContig[a], chainFromContig[b]));
+        Arrays.fill(contigSegmentStarts, NONE);
+        Arrays.fill(contigSegmentChainOffsets, new int[]{0});
+        Arrays.fill(contigSegmentChains, NONE);
+        int i = 0;
+        while (i < chains) {
+            int contig = chainFromContig[order[i]];
+            int j = i;
+            while (j < chains && chainFromContig[order[j]] == contig) j++;
+            indexSegments(contig, order, i, j);
+            i = j;
+        }
+    }
+
+    private void indexSegments(int contig, Integer[] order, int from, int to) {
+        int[] boundaries = new int[(to - from) * 2];
+        for (int k = from; k < to; k++) {
+            boundaries[(k - from) * 2] = chainFromStart[order[k]];
+            boundaries[(k - from) * 2 + 1] = chainFromEnd[order[k]];
+        }
+        Arrays.sort(boundaries);
+        int segments = 0;
+        for (int k = 0; k < boundaries.length; k++) {
+            if (k == 0 || boundaries[k] != boundaries[k - 1]) boundaries[segments++] = boundaries[k];
+        }
+        int[] segmentStarts = Arrays.copyOf(boundaries, segments);
+        int[] offsets = new int[segments + 1];
+        int[] covering = new int[16];
+        int count = 0;
+        for (int k = 0; k < segments; k++) {
+            offsets[k] = count;
+            for (int c = from; c < to; c++) {
+                int chain = order[c];
+                if (chainFromStart[chain] <= segmentStarts[k] && chainFromEnd[chain] > segmentStarts[k]) {
+                    if (count == covering.length) covering = Arrays.copyOf(covering, count * 2);
+                    covering[count++] = chain;
+                }
+            }
+        }
+        offsets[segments] = count;
+        contigSegmentStarts[contig] = segmentStarts;
+        contigSegmentChainOffsets[contig] = offsets;
+        contigSegmentChains[contig] = Arrays.copyOf(covering, count);
+    }
+
+    /**
+     * Lifts a single 1-based, closed interval. Returns null when the interval does not map.
+     */
+    public Interval liftOver(Interval interval) {
+        if (interval.getEnd() - interval.getStart() + 1 == 0) {
+            throw new IllegalArgumentException("Zero-length interval cannot be lifted over.  Interval: " + interval.getName());
+        }
+        int[] lifted = new int[RESULT_SIZE];
+        if (!liftOver(Contigs.idOf(interval.getContig()), interval.getStart(), interval.getEnd(), lifted)) return null;
+        boolean negativeStrand = (lifted[NEGATIVE_STRAND] == 1) != interval.isNegativeStrand();
+        return new Interval(Contigs.chainName(lifted[CONTIG]), lifted[START], lifted[END], negativeStrand, interval.getName());
+    }
+
+    /**
+     * Lifts the 1-based, closed interval {@code start..end} of a contig without allocating. On
+     * success {@code lifted} holds the target contig id, start and end at {@link #CONTIG},
+     * {@link #START} and {@link #END}, and 1 at {@link #NEGATIVE_STRAND} if the chain maps to the
+     * opposite strand. Returns false, leaving {@code lifted} untouched, when the interval does not map.
+     */
+    public boolean liftOver(int contigId, int start, int end, int[] lifted) {
+        return liftOver(contigId, start, end, lifted, null);
+    }
+
+    /**
+     * Starts a sweep over intervals sorted by contig and start. See {@link Sweep}.
+     */
+    public Sweep newSweep() {
+        return new Sweep();
+    }
+
+    private boolean liftOver(int contigId, int start, int end, int[] lifted, Sweep sweep) {
+        if (contigId < 0 || contigId >= contigSegmentStarts.length || end < start) return false;
+        int[] segmentStarts = contigSegmentStarts[contigId];
+        int[] offsets = contigSegmentChainOffsets[contigId];
+        int[] covering = contigSegmentChains[contigId];
+        // 0-based, half-open
+        int from = start - 1;
+        double minMatchSize = MIN_MATCH * (end - from);
+
+        int hit = -1;
+        int hitFirstBlock = -1;
+        int hitLastBlock = -1;
+        int hitStartOffset = 0;
+        int hitOffsetFromEnd = 0;
+        int firstSegment = Math.max(0, sweep == null
+                ? lastSegmentStartingAt(segmentStarts, from, 0, segmentStarts.length - 1)
+                : sweep.lastSegmentStartingAt(contigId, segmentStarts, from));
+        for (int segment = firstSegment; segment < segmentStarts.length && segmentStarts[segment] < end; segment++) {
+            for (int k = offsets[segment]; k < offsets[segment + 1]; k++) {
+                int chain = covering[k];
+                // a chain covering several segments is only looked at in the first one
+                if (segment != firstSegment && chainFromStart[chain] < segmentStarts[segment]) continue;
+                int blocksEnd = chainFirstBlock[chain] + chainBlockCount[chain];
+                int block = sweep == null
+                        ? firstBlockEndingAfter(chainFirstBlock[chain], blocksEnd, from)
+                        : sweep.firstBlockEndingAfter(chain, blocksEnd, from);
+                int firstBlock = block;
+                int lastBlock = -1;
+                int intersection = 0;
+                for (; block < blocksEnd && blockFromStart[block] < end; block++) {
+                    int blockEnd = blockFromStart[block] + blockLength[block];
+                    intersection += Math.min(end, blockEnd) - Math.max(from, blockFromStart[block]);
+                    lastBlock = block;
+                }
+                if (intersection == 0 || intersection < minMatchSize) continue;
+                if (hit != -1) return false;
+                hit = chain;
+                hitFirstBlock = firstBlock;
+                hitLastBlock = lastBlock;
+                hitStartOffset = Math.max(0, from - blockFromStart[firstBlock]);
+                hitOffsetFromEnd = Math.max(0, blockFromStart[lastBlock] + blockLength[lastBlock] - end);
+            }
+        }
+        if (hit == -1) return false;
+
+        int toStart = blockToStart[hitFirstBlock] + hitStartOffset;
+        int toEnd = blockToStart[hitLastBlock] + blockLength[hitLastBlock] - hitOffsetFromEnd;
+        if (toEnd <= toStart || toStart < 0) {
+            throw new IllegalStateException(String.format("Something strange lifting over %s:%d-%d",
+                    Contigs.chainName(contigId), start, end));
+        }
+        if (chainToOppositeStrand[hit]) {
+            int negativeStart = chainToSize[hit] - toEnd;
+            toEnd = chainToSize[hit] - toStart;
+            toStart = negativeStart;
+        }
+        lifted[CONTIG] = chainToContig[hit];
+        lifted[START] = toStart + 1;
+        lifted[END] = toEnd;
+        lifted[NEGATIVE_STRAND] = chainToOppositeStrand[hit] ? 1 : 0;
+        return true;
+    }
+
+    /** Index of the last segment in {@code segmentStarts[low..high]} starting at or before {@code from}, or {@code low - 1}. */
+    private static int lastSegmentStartingAt(int[] segmentStarts, int from, int low, int high) {
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (segmentStarts[mid] <= from) low = mid + 1;
+            else high = mid - 1;
+        }
+        return high;
+    }
+
+    /** Index of the first block in {@code [low, high)} ending after {@code from}, or {@code high}. */
+    private int firstBlockEndingAfter(int low, int high, int from) {
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (blockFromStart[mid] + blockLength[mid] <= from) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * Lifts intervals in contig and start order, searching forward from where the previous
+     * interval was found instead of from the start of the contig each time. For sorted input that
+     * turns every lookup into a short step along the blocks, so a sorted sheet is lifted in one
+     * pass over the chains. Unsorted intervals still lift correctly, a step backwards just falls
+     * back to a full binary search. Results are the same as {@link ChainIndex#liftOver(int, int, int, int[])}.
+     * A sweep keeps per-chain positions and must not be shared between threads.
+     */
+    public final class Sweep {
+
+        private final int[] segmentHints = new int[contigSegmentStarts.length];
+        private final int[] blockHints = chainFirstBlock.clone();
+
+        private Sweep() {
+            Arrays.fill(segmentHints, -1);
+        }
+
+        public boolean liftOver(int contigId, int start, int end, int[] lifted) {
+            return ChainIndex.this.liftOver(contigId, start, end, lifted, this);
+        }
+
+        private int lastSegmentStartingAt(int contigId, int[] segmentStarts, int from) {
+            int hint = segmentHints[contigId];
+            int found;
+            if (hint >= 0 && segmentStarts[hint] > from) {
+                found = ChainIndex.lastSegmentStartingAt(segmentStarts, from, 0, hint - 1);
+            } else {
+                // every segment up to the hint starts at or before from, gallop forward from it
+                int low = hint;
+                int probe = hint + 1;
+                for (int step = 1; probe < segmentStarts.length && segmentStarts[probe] <= from; step <<= 1) {
+                    low = probe;
+                    probe = low + step;
+                }
+                found = ChainIndex.lastSegmentStartingAt(segmentStarts, from, low + 1, Math.min(probe, segmentStarts.length) - 1);
+            }
+            segmentHints[contigId] = found;
+            return found;
+        }
+
+        private int firstBlockEndingAfter(int chain, int blocksEnd, int from) {
+            int hint = blockHints[chain];
+            int found;
+            if (hint > chainFirstBlock[chain] && blockFromStart[hint - 1] + blockLength[hint - 1] > from) {
+                found = ChainIndex.this.firstBlockEndingAfter(chainFirstBlock[chain], hint, from);
+            } else {
+                // every block before the hint ends at or before from, gallop forward from it
+                int low = hint;
+                int probe = hint;
+                for (int step = 1; probe < blocksEnd && blockFromStart[probe] + blockLength[probe] <= from; step <<= 1) {
+                    low = probe + 1;
+                    probe = Math.min(blocksEnd, probe + step);
+                }
+                found = ChainIndex.this.firstBlockEndingAfter(low, probe, from);
+            }
+            blockHints[chain] = found;
+            return found;
+        }
+    }
+
+    public String getChainPath() {
+        return chainPath;
+    }
+
+    public long getLoadTimeMillis() {
+        return loadTimeMillis;
+    }
+
+    /**
+     * SHA-256 of the chain file the index was built from.
+     */
+    public byte[] getChainDigest() {
+        return chainDigest.clone();
+    }
+
+    public boolean isFromCache() {
+        return fromCache;
+    }
+
+    public int getChainCount() {
+        return chainFromStart.length;
+    }
+
+    public int getBlockCount() {
+        return blockFromStart.length;
+    }
+
+    /**
+     * The arrays of an index while it is being parsed from the UCSC chain format or read from
+     * its {@link ChainIndexCache}.
+     */
+    static final class Builder {
+
+        // the SHA-256 of the chain file, when the arrays were read from its cache
+        byte[] chainDigest;
+
+        int chains;
+        int[] chainFromContig = new int[1024];
+        int[] chainFromStart = new int[1024];
+        int[] chainFromEnd = new int[1024];
+        int[] chainToContig = new int[1024];
+        int[] chainToSize = new int[1024];
+        boolean[] chainToOppositeStrand = new boolean[1024];
+        int[] chainFirstBlock = new int[1024];
+        int[] chainBlockCount = new int[1024];
+
+        int blocks;
+        int[] blockFromStart = new int[65536];
+        int[] blockToStart = new int[65536];
+        int[] blockLength = new int[65536];
+
+        void read(BufferedReader reader) throws IOException {
+            String line;
+            int lineNumber = 0;
+            int fromPosition = 0;
+            int toPosition = 0;
+            boolean inChain = false;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                String trimmed = line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("#")) continue;
+                String[] fields = trimmed.split("\\s+");
+                if (fields[0].equals("chain")) {
+                    if (inChain) throw chainError("Chain without a final block", lineNumber);
+                    addChain(fields, lineNumber);
+                    fromPosition = chainFromStart[chains - 1];
+                    toPosition = Integer.parseInt(fields[10]);
+                    inChain = true;
+                    continue;
+                }
+                if (!inChain) throw chainError("Block outside of a chain", lineNumber);
+                int size = Integer.parseInt(fields[0]);
+                addBlock(fromPosition, toPosition, size);
+                if (fields.length == 1) {
+                    if (fromPosition + size != chainFromEnd[chains - 1]) throw chainError("Blocks do not end at the chain end", lineNumber);
+                    inChain = false;
+                } else if (fields.length == 3) {
+                    fromPosition += size + Integer.parseInt(fields[1]);
+                    toPosition += size + Integer.parseInt(fields[2]);
+                } else {
+                    throw chainError("Expected 1 or 3 fields in block", lineNumber);
+                }
+            }
+            if (inChain) throw chainError("Chain without a final block", lineNumber);
+        }
+
+        private void addChain(String[] fields, int lineNumber) {
+            if (fields.length < 12) throw chainError("Chain header has too few fields", lineNumber);
+            if (!fields[4].equals("+")) throw chainError("Source strand must be +", lineNumber);
+            if (chains == chainFromStart.length) growChains();
+            chainFromContig[chains] = Contigs.idOf(fields[2]);
+            chainFromStart[chains] = Integer.parseInt(fields[5]);
+            chainFromEnd[chains] = Integer.parseInt(fields[6]);
+            chainToContig[chains] = Contigs.idOf(fields[7]);
+            chainToSize[chains] = Integer.parseInt(fields[8]);
+            chainToOppositeStrand[chains] = fields[9].equals("-");
+            chainFirstBlock[chains] = blocks;
+            chains++;
+        }
+
+        private void addBlock(int fromStart, int toStart, int size) {
+            if (blocks == blockFromStart.length) {
+                int length = blocks * 2;
+                blockFromStart = Arrays.copyOf(blockFromStart, length);
+                blockToStart = Arrays.copyOf(blockToStart, length);
+                blockLength = Arrays.copyOf(blockLength, length);
+            }
+            blockFromStart[blocks] = fromStart;
+            blockToStart[blocks] = toStart;
+            blockLength[blocks] = size;
+            blocks++;
+            chainBlockCount[chains - 1]++;
+        }
+
+        private void growChains() {
+            int length = chains * 2;
+            chainFromContig = Arrays.copyOf(chainFromContig, length);
+            chainFromStart = Arrays.copyOf(chainFromStart, length);
+            chainFromEnd = Arrays.copyOf(chainFromEnd, length);
+            chainToContig = Arrays.copyOf(chainToContig, length);
+            chainToSize = Arrays.copyOf(chainToSize, length);
+            chainToOppositeStrand = Arrays.copyOf(chainToOppositeStrand, length);
+            chainFirstBlock = Arrays.copyOf(chainFirstBlock, length);
+            chainBlockCount = Arrays.copyOf(chainBlockCount, length);
+        }
+
+        private static IllegalArgumentException chainError(String message, int lineNumber) {
+            return new IllegalArgumentException(String.format("%s at line %d of chain file", message, lineNumber));
+        }
+    }
+}
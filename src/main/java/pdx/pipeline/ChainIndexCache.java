@@ -0,0 +1,195 @@
+package pdx.pipeline;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Compiled form of a chain file, written next to it as {@code <chain file>.idx}. The file holds
+ * the arrays of a {@link ChainIndex} in binary, behind a header with a format version, the
+ * SHA-256 and size of the chain file it was built from and a CRC32 of the arrays. Reading it
+ * copies the arrays onto the heap in bulk, which replaces parsing the text chain; lookups then run
+ * on plain arrays. The chain file is hashed on every read and compared with the stored SHA-256,
+ * which costs little next to parsing it, so a chain replaced by one of the same size and
+ * modification time is never served from the old cache. A cache that is missing, from another
+ * version, built from a different chain file or damaged is ignored so the text chain is parsed
+ * instead.
+ */
+public final class ChainIndexCache {
+
+    static final String SUFFIX = ".idx";
+
+    private static final Logger log = LoggerFactory.getLogger(ChainIndexCache.class);
+
+    private static final int MAGIC = 0x50445843;
+    private static final int VERSION = 3;
+    private static final int HEADER_SIZE = 4 + 4 + Digests.SHA256_LENGTH + 8 + 8 + 8;
+
+    private ChainIndexCache() {
+    }
+
+    /**
+     * Parses {@code chainPath} and writes its compiled cache, replacing any existing one.
+     */
+    public static Path compile(String chainPath) throws IOException {
+        Path chain = Paths.get(chainPath);
+        ChainIndex.Builder builder = ChainIndex.parse(chainPath);
+        Path cache = write(chain, Digests.sha256(chain), builder);
+        log.info(String.format("Compiled %s to %s (%d bytes)", chain, cache, Files.size(cache)));
+        return cache;
+    }
+
+    static Path cachePath(Path chain) {
+        return chain.resolveSibling(chain.getFileName() + SUFFIX);
+    }
+
+    /**
+     * Returns the arrays stored in the cache of {@code chain}, with the chain's digest, or null if
+     * there is no usable cache.
+     */
+    static ChainIndex.Builder read(Path chain) {
+        Path cache = cachePath(chain);
+        if (!Files.isRegularFile(cache)) return null;
+        try (FileChannel channel = FileChannel.open(cache, StandardOpenOption.READ)) {
+            long sourceSize = Files.size(chain);
+            long size = channel.size();
+            if (size < HEADER_SIZE) return rejected(cache, "it is truncated");
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt() != MAGIC) return rejected(cache, "it is not a chain index");
+            if (buffer.getInt() != VERSION) return rejected(cache, "it was written by another version");
+            byte[] digest = new byte[Digests.SHA256_LENGTH];
+            buffer.get(digest);
+            if (buffer.getLong() != sourceSize || !Arrays.equals(digest, Digests.sha256(chain))) return rejected(cache, "the chain file has changed");
+            long payloadLength = buffer.getLong();
+            long checksum = buffer.getLong();
+            if (payloadLength != size - HEADER_SIZE) return rejected(cache, "it is truncated");
+            CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate());
+            if (crc.getValue() != checksum) return rejected(cache, "its checksum does not match");
+            ChainIndex.Builder builder = readPayload(buffer);
+            builder.chainDigest = digest;
+            return builder;
+        } catch (IOException | RuntimeException e) {
+            log.warn(String.format("Could not read chain index %s: %s", cache, e));
+            return null;
+        }
+    }
+
+    private static ChainIndex.Builder rejected(Path cache, String reason) {
+        log.info(String.format("Ignoring chain index %s because %s", cache, reason));
+        return null;
+    }
+
+    private static ChainIndex.Builder readPayload(ByteBuffer buffer) {
+        int[] contigIds = new int[buffer.getInt()];
+        for (int i = 0; i < contigIds.length; i++) {
+            byte[] name = new byte[buffer.getInt()];
+            buffer.get(name);
+            contigIds[i] = Contigs.idOf(new String(name, StandardCharsets.UTF_8));
+        }
+        ChainIndex.Builder builder = new ChainIndex.Builder();
+        builder.chains = buffer.getInt();
+        builder.blocks = buffer.getInt();
+        builder.chainFromContig = toContigIds(readInts(buffer, builder.chains), contigIds);
+        builder.chainFromStart = readInts(buffer, builder.chains);
+        builder.chainFromEnd = readInts(buffer, builder.chains);
+        builder.chainToContig = toContigIds(readInts(buffer, builder.chains), contigIds);
+        builder.chainToSize = readInts(buffer, builder.chains);
+        builder.chainFirstBlock = readInts(buffer, builder.chains);
+        builder.chainBlockCount = readInts(buffer, builder.chains);
+        builder.blockFromStart = readInts(buffer, builder.blocks);
+        builder.blockToStart = readInts(buffer, builder.blocks);
+        builder.blockLength = readInts(buffer, builder.blocks);
+        builder.chainToOppositeStrand = new boolean[builder.chains];
+        for (int i = 0; i < builder.chains; i++) builder.chainToOppositeStrand[i] = buffer.get() != 0;
+        return builder;
+    }
+
+    private static int[] readInts(ByteBuffer buffer, int count) {
+        int[] values = new int[count];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + count * 4);
+        return values;
+    }
+
+    private static int[] toContigIds(int[] localIds, int[] contigIds) {
+        for (int i = 0; i < localIds.length; i++) localIds[i] = contigIds[localIds[i]];
+        return localIds;
+    }
+
+    /**
+     * Writes the cache of {@code chain} to a temporary file and moves it into place.
+     */
+    static Path write(Path chain, byte[] sourceDigest, ChainIndex.Builder builder) throws IOException {
+        Map<Integer, Integer> localIds = new HashMap<>();
+        int[] localFrom = toLocalIds(builder.chainFromContig, builder.chains, localIds);
+        int[] localTo = toLocalIds(builder.chainToContig, builder.chains, localIds);
+        byte[][] names = new byte[localIds.size()][];
+        localIds.forEach((contigId, localId) -> names[localId] = Contigs.chainName(contigId).getBytes(StandardCharsets.UTF_8));
+
+        int payloadLength = 4 + 4 + 4 + builder.chains * (7 * 4 + 1) + builder.blocks * 3 * 4;
+        for (byte[] name : names) payloadLength += 4 + name.length;
+        ByteBuffer payload = ByteBuffer.allocate(payloadLength);
+        payload.putInt(names.length);
+        for (byte[] name : names) payload.putInt(name.length).put(name);
+        payload.putInt(builder.chains).putInt(builder.blocks);
+        putInts(payload, localFrom, builder.chains);
+        putInts(payload, builder.chainFromStart, builder.chains);
+        putInts(payload, builder.chainFromEnd, builder.chains);
+        putInts(payload, localTo, builder.chains);
+        putInts(payload, builder.chainToSize, builder.chains);
+        putInts(payload, builder.chainFirstBlock, builder.chains);
+        putInts(payload, builder.chainBlockCount, builder.chains);
+        putInts(payload, builder.blockFromStart, builder.blocks);
+        putInts(payload, builder.blockToStart, builder.blocks);
+        putInts(payload, builder.blockLength, builder.blocks);
+        for (int i = 0; i < builder.chains; i++) payload.put((byte) (builder.chainToOppositeStrand[i] ? 1 : 0));
+        payload.flip();
+
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).put(sourceDigest)
+                .putLong(Files.size(chain))
+                .putLong(payloadLength).putLong(crc.getValue());
+        header.flip();
+
+        Path cache = cachePath(chain);
+        Path temp = Files.createTempFile(cache.toAbsolutePath().getParent(), cache.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (header.hasRemaining()) channel.write(header);
+                while (payload.hasRemaining()) channel.write(payload);
+            }
+            Files.move(temp, cache, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return cache;
+    }
+
+    private static int[] toLocalIds(int[] contigIds, int count, Map<Integer, Integer> localIds) {
+        int[] local = new int[count];
+        for (int i = 0; i < count; i++) local[i] = localIds.computeIfAbsent(contigIds[i], id -> localIds.size());
+        return local;
+    }
+
+    private static void putInts(ByteBuffer buffer, int[] values, int count) {
+        buffer.asIntBuffer().put(values, 0, count);
+        buffer.position(buffer.position() + count * 4);
+    }
+}
@@ -0,0 +1,39 @@
+package pdx.pipeline;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process wide cache of {@link ChainIndex} instances keyed by the canonical chain file path.
+ * The first caller for a path pays the parsing cost, every later caller gets the same index.
+ */
+public final class ChainIndexRegistry {
+
+    private static final Map<String, ChainIndex> indexes = new ConcurrentHashMap<>();
+
+    private ChainIndexRegistry() {
+    }
+
+    public static ChainIndex get(String chainPath) {
+        return indexes.computeIfAbsent(canonicalPath(chainPath), ChainIndex::load);
+    }
+
+    public static boolean isLoaded(String chainPath) {
+        return indexes.containsKey(canonicalPath(chainPath));
+    }
+
+    public static long getTotalLoadTimeMillis() {
+        return indexes.values().stream().mapToLong(ChainIndex::getLoadTimeMillis).sum();
+    }
+
+    private static String canonicalPath(String chainPath) {
+        File chainFile = new File(chainPath);
+        try {
+            return chainFile.getCanonicalPath();
+        } catch (IOException e) {
+            return chainFile.getAbsolutePath();
+        }
+    }
+}
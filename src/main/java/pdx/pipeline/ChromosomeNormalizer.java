@@ -0,0 +1,102 @@
+package pdx.pipeline;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Maps chromosome names as providers write them (1, chr1, 23, MT, chrUn_...) to chain-format
+ * contig ids. The common spellings are resolved once when the class loads; anything else goes
+ * through the original regex rules, whose chain name is remembered in a least recently used
+ * cache, and resolves only to a contig that is already known from the primary assembly or a
+ * loaded chain. An unrecognised spelling such as NA is {@link Contigs#UNKNOWN}, it never
+ * registers a contig of its own.
+ */
+public final class ChromosomeNormalizer {
+
+    static final int MAX_CACHED_SPELLINGS = 4096;
+
+    private static final Pattern CHAIN_FORMAT = Pattern.compile("(?i)^chr([0-9]{1,2}|[XYM]|Un)$");
+    private static final Pattern NUMERIC_SEX_CHROMO = Pattern.compile("^.*2[34]");
+    private static final Pattern NUMERIC_X_CHROMO = Pattern.compile("^.*23");
+    private static final Pattern TO_CHAIN_FORMAT = Pattern.compile("(?i)^(?:chr)?([0-9]{1,2}|[xym]|Un).*$");
+
+    private static final Map<String, Integer> table = new HashMap<>();
+    private static final SpellingCache<String> cache = new SpellingCache<>(MAX_CACHED_SPELLINGS);
+
+    static {
+        String[] names = new String[27];
+        for (int i = 1; i <= 24; i++) names[i - 1] = String.valueOf(i);
+        names[24] = "X";
+        names[25] = "Y";
+        names[26] = "M";
+        for (String name : names) {
+            for (String spelling : new String[]{name, "chr" + name, "Chr" + name, "CHR" + name}) {
+                putSpelling(spelling);
+                putSpelling(spelling.toLowerCase());
+            }
+        }
+        for (String mito : new String[]{"MT", "mt", "Mt", "chrMT", "chrmt", "chrMt", "CHRMT", "Un", "chrUn"}) {
+            putSpelling(mito);
+        }
+        putSpelling("");
+    }
+
+    private ChromosomeNormalizer() {
+    }
+
+    private static void putSpelling(String spelling) {
+        table.put(spelling, Contigs.idOf(harmonizeChromoToChain(spelling)));
+    }
+
+    /**
+     * Returns the contig id of a chromosome as written in a provider sheet, or
+     * {@link Contigs#UNKNOWN} if it has no chain-format name.
+     */
+    public static int contigIdOf(String chromosome) {
+        if (chromosome == null) return Contigs.UNKNOWN;
+        Integer id = table.get(chromosome);
+        if (id != null) return id;
+        return Contigs.find(cache.get(chromosome, ChromosomeNormalizer::harmonizeChromoToChain));
+    }
+
+    /**
+     * The chain-format name of a chromosome, shared with every other spelling of the same contig.
+     */
+    public static String toChainName(String chromosome) {
+        int id = contigIdOf(chromosome);
+        return id == Contigs.UNKNOWN ? null : Contigs.chainName(id);
+    }
+
+    public static int getCacheSize() {
+        return cache.size();
+    }
+
+    private static String harmonizeChromoToChain(String chromo){
+        String formatedChromo = chromo.trim();
+        if(notChainFormat(chromo)) {
+            if (isNumericSexChromo(chromo)){
+                formatedChromo = formatNumericSexChromoToChain(chromo);
+            }
+            else
+                formatedChromo = changeStringToChainFormat(chromo);
+        }
+        return formatedChromo;
+    }
+
+    private static String formatNumericSexChromoToChain(String chromo){
+        return NUMERIC_X_CHROMO.matcher(chromo).matches() ? "chrX" : "chrY";
+    }
+
+    private static String changeStringToChainFormat(String chromo){
+        return TO_CHAIN_FORMAT.matcher(chromo.toUpperCase()).replaceAll("chr$1");
+    }
+
+    private static boolean isNumericSexChromo(String chromo){
+        return NUMERIC_SEX_CHROMO.matcher(chromo).matches();
+    }
+
+    private static boolean notChainFormat(String chromo){
+        return !CHAIN_FORMAT.matcher(chromo).matches();
+    }
+}
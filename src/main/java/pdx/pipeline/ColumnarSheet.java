@@ -0,0 +1,578 @@
+package pdx.pipeline;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+/**
+ * A sheet held column by column rather than as a list of string lists. The text of every cell is
+ * kept as UTF-8 in one byte pool shared by the whole sheet, and each column is an array of offsets
+ * into that pool, so a row costs its text plus four bytes a cell instead of a list and a String
+ * per cell. Each pooled cell is preceded by its length, a byte for cells shorter than 128 bytes,
+ * so a cell is read without looking at its neighbours. Columns named when the sheet is built are also parsed once into primitive arrays.
+ * <p>
+ * Values that repeat, such as the datasource, platform, assembly, chromosome or sample of every
+ * row, are stored once in a dictionary per column and the cells hold codes into it. A column is
+ * coded in single bytes while it has fewer than 255 values. Its dictionary stops growing once it
+ * holds {@value #MAX_DICTIONARY_SIZE} values, after which new values go to the pool, and it is no
+ * longer consulted when most of the cells miss it, as for positions.
+ * <p>
+ * A lift does not copy rows. It selects the rows to keep with {@link #select} and puts the lifted
+ * values in overlay columns, which replace the pooled text of the selected rows when the sheet is
+ * read or written. Row 0 is the header, as in the list form.
+ */
+public final class ColumnarSheet {
+
+    /**
+     * Value of a parsed number column whose cell is not a number. {@link #getLong} throws for it.
+     */
+    public static final long NOT_A_NUMBER = Long.MIN_VALUE;
+
+    /**
+     * Most distinct values a column's dictionary holds.
+     */
+    public static final int MAX_DICTIONARY_SIZE = 1024;
+
+    // A cell reference is an offset into the pool, where the cell's length is followed by its
+    // text, ABSENT, or a dictionary code stored as -(code + 2)
+    private static final int ABSENT = -1;
+    private static final int SMALL_ABSENT = 0xff;
+
+    private final byte[] pool;
+    private final int[] headerRefs;
+    private final byte[][] smallCodes;
+    private final int[][] cellRefs;
+    private final Dictionary[] dictionaries;
+    private final int[] widths;
+    private final int rowCount;
+    private final Map<Integer, long[]> longColumns;
+    private final Map<Integer, int[]> intColumns;
+    private final Object[] overlays;
+    private BitSet selection;
+
+    private ColumnarSheet(Builder builder) {
+        this.rowCount = builder.rowCount;
+        this.pool = Arrays.copyOf(builder.pool, builder.poolSize);
+        this.headerRefs = Arrays.copyOf(builder.headerRefs, builder.headerWidth);
+        this.smallCodes = new byte[builder.columnCount][];
+        this.cellRefs = new int[builder.columnCount][];
+        for (int c = 0; c < builder.columnCount; c++) {
+            if (builder.cellRefs[c] != null) cellRefs[c] = Arrays.copyOf(builder.cellRefs[c], rowCount);
+            else smallCodes[c] = Arrays.copyOf(builder.smallCodes[c], rowCount);
+        }
+        this.dictionaries = Arrays.copyOf(builder.dictionaries, builder.columnCount);
+        this.widths = Arrays.copyOf(builder.widths, rowCount);
+        this.longColumns = new HashMap<>();
+        builder.longColumns.forEach((column, values) -> longColumns.put(column, Arrays.copyOf(values, rowCount)));
+        this.intColumns = new HashMap<>();
+        builder.intColumns.forEach((column, values) -> intColumns.put(column, Arrays.copyOf(values, rowCount)));
+        this.overlays = new Object[builder.columnCount];
+    }
+
+    /**
+     * Number of rows, header included.
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Number of cells in {@code row}.
+     */
+    public int getWidth(int row) {
+        return widths[row];
+    }
+
+    /**
+     * Index of the first header matching {@code header} ignoring case, or -1.
+     */
+    public int columnOf(String header) {
+        if (rowCount == 0) return -1;
+        for (int c = 0; c < widths[0]; c++) {
+            if (getString(0, c).equalsIgnoreCase(header)) return c;
+        }
+        return -1;
+    }
+
+    public String getString(int row, int column) {
+        Object overlay = overlayFor(row, column);
+        if (overlay instanceof long[]) return String.valueOf(((long[]) overlay)[row]);
+        if (overlay != null) return ((String[]) overlay)[row];
+        int ref = cellRef(row, column);
+        if (ref < ABSENT) return dictionaries[column].getString(codeOf(ref));
+        int length = lengthAt(pool, ref);
+        return new String(pool, ref + prefixSize(length), length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Length in bytes of the text read from the file for a cell, ignoring overlays.
+     */
+    public int getCellLength(int row, int column) {
+        int ref = cellRef(row, column);
+        if (ref < ABSENT) return dictionaries[column].getValue(codeOf(ref)).length;
+        return lengthAt(pool, ref);
+    }
+
+    /**
+     * Number of distinct values of {@code column} held in its dictionary rather than in the pool.
+     */
+    public int getDictionarySize(int column) {
+        Dictionary dictionary = column < dictionaries.length ? dictionaries[column] : null;
+        return dictionary == null ? 0 : dictionary.size;
+    }
+
+    /**
+     * Every cell of {@code row} as a list, overlays applied.
+     */
+    public ArrayList<String> getRow(int row) {
+        ArrayList<String> cells = new ArrayList<>(widths[row]);
+        for (int c = 0; c < widths[row]; c++) cells.add(getString(row, c));
+        return cells;
+    }
+
+    /**
+     * The parsed values of a column named with {@link Builder#parseLongs}. Blank and missing
+     * cells read as -1 and cells that are not numbers as {@link #NOT_A_NUMBER}. The array is the
+     * sheet's own, not a copy.
+     */
+    public long[] getLongColumn(int column) {
+        long[] values = longColumns.get(column);
+        if (values == null) throw new IllegalArgumentException("Column " + column + " was not parsed as numbers");
+        return values;
+    }
+
+    /**
+     * The parsed value of a cell in a number column, throwing {@link NumberFormatException} as
+     * {@link Long#parseLong} would if the cell is not a number.
+     */
+    public long getLong(int row, int column) {
+        long value = getLongColumn(column)[row];
+        if (value == NOT_A_NUMBER) throw new NumberFormatException("For input string: \"" + getString(row, column) + "\"");
+        return value;
+    }
+
+    /**
+     * The values of a column mapped with {@link Builder#mapInts}. The array is the sheet's own.
+     */
+    public int[] getIntColumn(int column) {
+        int[] values = intColumns.get(column);
+        if (values == null) throw new IllegalArgumentException("Column " + column + " was not mapped to ints");
+        return values;
+    }
+
+    /**
+     * Keeps only the data rows set in {@code rows} when the sheet is written. The header is always
+     * kept.
+     */
+    public void select(BitSet rows) {
+        this.selection = rows;
+    }
+
+    public boolean isSelected(int row) {
+        return row == 0 || selection == null || selection.get(row);
+    }
+
+    /**
+     * Number of data rows that will be written.
+     */
+    public int getSelectedCount() {
+        if (selection == null) return Math.max(rowCount - 1, 0);
+        return selection.get(1, Math.max(rowCount, 1)).cardinality();
+    }
+
+    /**
+     * Replaces the cells of {@code column} in the selected data rows with {@code values}, indexed
+     * by row. The array is kept, not copied.
+     */
+    public void overlay(int column, long[] values) {
+        checkOverlay(column, values.length);
+        overlays[column] = values;
+    }
+
+    public void overlay(int column, String[] values) {
+        checkOverlay(column, values.length);
+        overlays[column] = values;
+    }
+
+    private void checkOverlay(int column, int length) {
+        if (column < 0 || column >= overlays.length) throw new IndexOutOfBoundsException("Column " + column);
+        if (length < rowCount) throw new IllegalArgumentException("Overlay needs a value for each of the " + rowCount + " rows");
+    }
+
+    /**
+     * The overlay covering a cell, a {@code long[]} or {@code String[]}, or null if the pooled text
+     * should be used.
+     */
+    Object overlayFor(int row, int column) {
+        if (row == 0 || column >= overlays.length || !isSelected(row)) return null;
+        return overlays[column];
+    }
+
+    /**
+     * Copies the UTF-8 text read from the file for a cell into {@code dest} at {@code offset},
+     * which must have room for {@link #getCellLength} bytes.
+     */
+    void copyCell(int row, int column, byte[] dest, int offset) {
+        int ref = cellRef(row, column);
+        if (ref < ABSENT) {
+            byte[] value = dictionaries[column].getValue(codeOf(ref));
+            System.arraycopy(value, 0, dest, offset, value.length);
+        } else {
+            int length = lengthAt(pool, ref);
+            System.arraycopy(pool, ref + prefixSize(length), dest, offset, length);
+        }
+    }
+
+    private int cellRef(int row, int column) {
+        if (row == 0) return column < headerRefs.length ? headerRefs[column] : ABSENT;
+        if (cellRefs[column] != null) return cellRefs[column][row];
+        int code = smallCodes[column][row] & 0xff;
+        return code == SMALL_ABSENT ? ABSENT : refOf(code);
+    }
+
+    /**
+     * The length of the pooled cell at {@code ref}, written seven bits a byte, low bits first,
+     * with the high bit set on every byte but the last.
+     */
+    private static int lengthAt(byte[] pool, int ref) {
+        int length = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = pool[ref++];
+            length |= (b & 0x7f) << shift;
+            if (b >= 0) return length;
+        }
+    }
+
+    private static int prefixSize(int length) {
+        int size = 1;
+        while ((length >>>= 7) != 0) size++;
+        return size;
+    }
+
+    private static int refOf(int code) {
+        return -code - 2;
+    }
+
+    private static int codeOf(int ref) {
+        return -ref - 2;
+    }
+
+    /**
+     * Collects rows into a new sheet. Rows can come straight from a {@link DelimitedReader}, whose
+     * bytes are copied into the pool without being decoded, or as lists of strings.
+     */
+    public static final class Builder implements RowSink {
+
+        private byte[] pool = new byte[1 << 16];
+        private int poolSize;
+        private int[] headerRefs = new int[0];
+        private int headerWidth;
+        private byte[][] smallCodes = new byte[0][];
+        private int[][] cellRefs = new int[0][];
+        private Dictionary[] dictionaries = new Dictionary[0];
+        private int columnCount;
+        private int[] widths = new int[1024];
+        private int rowCount;
+
+        private final List<String> longHeaders = new ArrayList<>();
+        private final Map<String, ToIntFunction<String>> intHeaders = new HashMap<>();
+        private final Map<Integer, long[]> longColumns = new HashMap<>();
+        private final Map<Integer, int[]> intColumns = new HashMap<>();
+        private final Map<Integer, ToIntFunction<String>> intMappings = new HashMap<>();
+
+        /**
+         * Parses the columns with these headers into {@code long[]} columns as rows are added.
+         */
+        public Builder parseLongs(String... headers) {
+            longHeaders.addAll(Arrays.asList(headers));
+            return this;
+        }
+
+        /**
+         * Maps every cell of the column with this header to an int as rows are added. Missing
+         * cells are mapped as blanks.
+         */
+        public Builder mapInts(String header, ToIntFunction<String> mapping) {
+            intHeaders.put(header, mapping);
+            return this;
+        }
+
+        public void addRow(DelimitedReader reader) {
+            int width = reader.fieldCount();
+            startRow(width);
+            for (int c = 0; c < width; c++) {
+                int length = reader.fieldByteEnd(c) - reader.fieldByteStart(c);
+                ensurePool(prefixSize(length) + length);
+                reader.copyFieldBytes(c, pool, poolSize + prefixSize(length));
+                addCell(c, length);
+            }
+            if (rowCount == 0) {
+                endRow(width);
+                return;
+            }
+            longColumns.forEach((column, values) -> {
+                long value = -1;
+                if (column < width) {
+                    try {
+                        value = reader.parseLong(column);
+                    } catch (NumberFormatException e) {
+                        value = NOT_A_NUMBER;
+                    }
+                }
+                values[rowCount] = value;
+            });
+            intColumns.forEach((column, values) ->
+                    values[rowCount] = intMappings.get(column).applyAsInt(column < width ? reader.getString(column) : ""));
+            endRow(width);
+        }
+
+        @Override
+        public void accept(ArrayList<String> row) {
+            int width = row.size();
+            startRow(width);
+            for (int c = 0; c < width; c++) {
+                byte[] text = row.get(c).getBytes(StandardCharsets.UTF_8);
+                ensurePool(prefixSize(text.length) + text.length);
+                System.arraycopy(text, 0, pool, poolSize + prefixSize(text.length), text.length);
+                addCell(c, text.length);
+            }
+            if (rowCount == 0) {
+                endRow(width);
+                return;
+            }
+            longColumns.forEach((column, values) -> values[rowCount] = column < width ? parseLong(row.get(column)) : -1);
+            intColumns.forEach((column, values) ->
+                    values[rowCount] = intMappings.get(column).applyAsInt(column < width ? row.get(column) : ""));
+            endRow(width);
+        }
+
+        /**
+         * Stores the cell whose text was just copied to the end of the pool, after room for its
+         * length, as a dictionary code when its column's dictionary has or takes the value,
+         * keeping the text behind its length otherwise. Header cells are always kept.
+         */
+        private void addCell(int column, int length) {
+            int ref = poolSize;
+            int text = poolSize + prefixSize(length);
+            if (rowCount > 0) {
+                int code = dictionaries[column].encode(pool, text, length);
+                if (code >= 0) ref = refOf(code);
+            }
+            if (ref >= 0) {
+                int rest = length;
+                for (; rest >= 0x80; rest >>>= 7) pool[poolSize++] = (byte) (rest & 0x7f | 0x80);
+                pool[poolSize] = (byte) rest;
+                poolSize = text + length;
+            }
+            setRef(column, ref);
+        }
+
+        private void setRef(int column, int ref) {
+            if (rowCount == 0) {
+                headerRefs[column] = ref;
+                return;
+            }
+            if (cellRefs[column] == null) {
+                if (ref == ABSENT || ref < ABSENT && codeOf(ref) < SMALL_ABSENT) {
+                    smallCodes[column][rowCount] = (byte) (ref == ABSENT ? SMALL_ABSENT : codeOf(ref));
+                    return;
+                }
+                widen(column);
+            }
+            cellRefs[column][rowCount] = ref;
+        }
+
+        /**
+         * Moves a column from single byte codes to int references once it needs a larger code
+         * or a pooled cell.
+         */
+        private void widen(int column) {
+            byte[] codes = smallCodes[column];
+            int[] refs = new int[codes.length];
+            for (int row = 1; row < rowCount; row++) {
+                int code = codes[row] & 0xff;
+                refs[row] = code == SMALL_ABSENT ? ABSENT : refOf(code);
+            }
+            cellRefs[column] = refs;
+            smallCodes[column] = null;
+        }
+
+        private static long parseLong(String cell) {
+            if (cell.trim().isEmpty()) return -1;
+            try {
+                return Long.parseLong(cell);
+            } catch (NumberFormatException e) {
+                return NOT_A_NUMBER;
+            }
+        }
+
+        private void startRow(int width) {
+            if (rowCount == widths.length) {
+                int size = widths.length * 2;
+                widths = Arrays.copyOf(widths, size);
+                for (int c = 0; c < columnCount; c++) {
+                    if (cellRefs[c] != null) cellRefs[c] = Arrays.copyOf(cellRefs[c], size);
+                    else smallCodes[c] = Arrays.copyOf(smallCodes[c], size);
+                }
+                longColumns.replaceAll((column, values) -> Arrays.copyOf(values, size));
+                intColumns.replaceAll((column, values) -> Arrays.copyOf(values, size));
+            }
+            if (width > columnCount) {
+                if (width > cellRefs.length) {
+                    int capacity = Math.max(width, cellRefs.length * 2);
+                    smallCodes = Arrays.copyOf(smallCodes, capacity);
+                    cellRefs = Arrays.copyOf(cellRefs, capacity);
+                    dictionaries = Arrays.copyOf(dictionaries, capacity);
+                }
+                for (int c = columnCount; c < width; c++) {
+                    smallCodes[c] = new byte[widths.length];
+                    Arrays.fill(smallCodes[c], 0, rowCount, (byte) SMALL_ABSENT);
+                    dictionaries[c] = new Dictionary();
+                }
+                columnCount = width;
+            }
+            if (rowCount == 0) {
+                headerRefs = new int[width];
+                headerWidth = width;
+                return;
+            }
+            for (int c = width; c < columnCount; c++) setRef(c, ABSENT);
+        }
+
+        private void endRow(int width) {
+            widths[rowCount] = width;
+            if (rowCount == 0) indexHeader();
+            rowCount++;
+        }
+
+        private void indexHeader() {
+            for (String header : longHeaders) {
+                int column = headerColumn(header);
+                if (column >= 0) longColumns.put(column, new long[widths.length]);
+            }
+            intHeaders.forEach((header, mapping) -> {
+                int column = headerColumn(header);
+                if (column >= 0) {
+                    intColumns.put(column, new int[widths.length]);
+                    intMappings.put(column, mapping);
+                }
+            });
+        }
+
+        private int headerColumn(String header) {
+            for (int c = 0; c < widths[0]; c++) {
+                int length = lengthAt(pool, headerRefs[c]);
+                int start = headerRefs[c] + prefixSize(length);
+                if (new String(pool, start, length, StandardCharsets.UTF_8).equalsIgnoreCase(header)) return c;
+            }
+            return -1;
+        }
+
+        private void ensurePool(int length) {
+            if ((long) poolSize + length > Integer.MAX_VALUE - 8) throw new IllegalStateException("Sheet is larger than 2 GB");
+            if (poolSize + length > pool.length) {
+                pool = Arrays.copyOf(pool, (int) Math.min(Integer.MAX_VALUE - 8, Math.max((long) pool.length * 2, poolSize + length)));
+            }
+        }
+
+        public int getRowCount() {
+            return rowCount;
+        }
+
+        public ColumnarSheet build() {
+            return new ColumnarSheet(this);
+        }
+    }
+
+    /**
+     * The distinct values of one column, each kept once as UTF-8 and decoded to a shared String on
+     * first read. Values are found by hashing their bytes, so looking up a cell allocates nothing.
+     */
+    private static final class Dictionary {
+
+        private byte[][] values = new byte[16][];
+        private String[] strings = new String[16];
+        private int size;
+        private int[] slots = new int[32];
+        private int hits;
+        private int misses;
+        private boolean open = true;
+
+        /**
+         * The code of the value at {@code bytes[start, start + length)}, adding it while there is
+         * room, or -1 when the cell should stay in the pool.
+         */
+        int encode(byte[] bytes, int start, int length) {
+            if (!open && misses > MAX_DICTIONARY_SIZE && misses > hits) return -1;
+            int hash = 1;
+            for (int i = start; i < start + length; i++) hash = 31 * hash + bytes[i];
+            int mask = slots.length - 1;
+            for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+                int code = slots[slot] - 1;
+                if (code < 0) break;
+                if (matches(values[code], bytes, start, length)) {
+                    if (!open) hits++;
+                    return code;
+                }
+            }
+            if (size == MAX_DICTIONARY_SIZE) {
+                open = false;
+                misses++;
+                return -1;
+            }
+            return add(Arrays.copyOfRange(bytes, start, start + length), hash);
+        }
+
+        private int add(byte[] value, int hash) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+                strings = Arrays.copyOf(strings, size * 2);
+            }
+            values[size] = value;
+            if ((size + 1) * 2 > slots.length) rehash();
+            int mask = slots.length - 1;
+            int slot = mix(hash) & mask;
+            while (slots[slot] != 0) slot = (slot + 1) & mask;
+            slots[slot] = size + 1;
+            return size++;
+        }
+
+        private void rehash() {
+            slots = new int[slots.length * 2];
+            int mask = slots.length - 1;
+            for (int code = 0; code < size; code++) {
+                int hash = 1;
+                for (byte b : values[code]) hash = 31 * hash + b;
+                int slot = mix(hash) & mask;
+                while (slots[slot] != 0) slot = (slot + 1) & mask;
+                slots[slot] = code + 1;
+            }
+        }
+
+        private static int mix(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+
+        private static boolean matches(byte[] value, byte[] bytes, int start, int length) {
+            return value.length == length && Arrays.equals(value, 0, length, bytes, start, start + length);
+        }
+
+        byte[] getValue(int code) {
+            return values[code];
+        }
+
+        String getString(int code) {
+            String value = strings[code];
+            if (value == null) {
+                value = new String(values[code], StandardCharsets.UTF_8);
+                strings[code] = value;
+            }
+            return value;
+        }
+    }
+}
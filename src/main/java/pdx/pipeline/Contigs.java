@@ -0,0 +1,83 @@
+package pdx.pipeline;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns small integer ids to chain-format contig names so coordinates can be passed around
+ * in primitive arrays. The primary assembly contigs always get the same ids, anything else
+ * (unplaced scaffolds, alt haplotypes) is numbered in the order it is first seen.
+ */
+public final class Contigs {
+
+    public static final int UNKNOWN = -1;
+
+    private static final String[] PRIMARY = {
+            "chr1", "chr2", "chr3", "chr4", "chr5", "chr6", "chr7", "chr8", "chr9", "chr10",
+            "chr11", "chr12", "chr13", "chr14", "chr15", "chr16", "chr17", "chr18", "chr19", "chr20",
+            "chr21", "chr22", "chrX", "chrY", "chrM"
+    };
+
+    private static final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private static volatile String[] chainNames = new String[0];
+    private static volatile String[] vcfNames = new String[0];
+
+    static {
+        for (String name : PRIMARY) idOf(name);
+    }
+
+    private Contigs() {
+    }
+
+    /**
+     * Returns the id of a chain-format contig name, registering it if it has not been seen.
+     */
+    public static int idOf(String chainName) {
+        if (chainName == null || chainName.isEmpty()) return UNKNOWN;
+        Integer id = ids.get(chainName);
+        return id != null ? id : register(chainName);
+    }
+
+    /**
+     * Returns the id of a contig name that is already registered, or {@link #UNKNOWN}.
+     */
+    public static int find(String chainName) {
+        if (chainName == null || chainName.isEmpty()) return UNKNOWN;
+        Integer id = ids.get(chainName);
+        return id != null ? id : UNKNOWN;
+    }
+
+    public static String chainName(int id) {
+        return chainNames[id];
+    }
+
+    /**
+     * The contig name as written back to PDCM files, i.e. upper case without the chr prefix.
+     */
+    public static String vcfName(int id) {
+        return vcfNames[id];
+    }
+
+    public static int size() {
+        return chainNames.length;
+    }
+
+    private static synchronized int register(String chainName) {
+        Integer existing = ids.get(chainName);
+        if (existing != null) return existing;
+        int id = chainNames.length;
+        String[] names = Arrays.copyOf(chainNames, id + 1);
+        String[] vcf = Arrays.copyOf(vcfNames, id + 1);
+        names[id] = chainName;
+        vcf[id] = toVcfName(chainName);
+        vcfNames = vcf;
+        chainNames = names;
+        ids.put(chainName, id);
+        return id;
+    }
+
+    static String toVcfName(String chromo){
+        return chromo.toUpperCase().replaceAll("(?i)chr", "");
+    }
+}
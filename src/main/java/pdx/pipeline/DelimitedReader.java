@@ -0,0 +1,323 @@
+package pdx.pipeline;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Reads a UTF-8 delimited file through a large NIO buffer, one row at a time.
+ * <p>
+ * Rows are split on the raw bytes and nothing is decoded until a field is asked for. Fields are
+ * returned as {@link CharSequence} views over a buffer owned by the reader, so they are only valid
+ * until the next call to {@link #next()}; call {@code toString()} to keep a value. Coordinates can
+ * be read with {@link #parseLong(int)} straight from the bytes without decoding them at all.
+ */
+public final class DelimitedReader implements Closeable {
+
+    private static final int DEFAULT_BUFFER_SIZE = 4 << 20;
+    private static final int UNDECODED = -1;
+
+    private final FileChannel channel;
+    private final byte delimiter;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    private byte[] bytes;
+    private ByteBuffer buffer;
+    private int limit;
+    private int pos;
+    private boolean eof;
+    private long rowOffset;
+    private long consumed;
+
+    private int fieldCount;
+    private int[] fieldStarts = new int[64];
+    private int[] fieldEnds = new int[64];
+    private int[] charStarts = new int[64];
+    private int[] charEnds = new int[64];
+    private FieldView[] views = new FieldView[64];
+    private char[] chars = new char[1024];
+    private int charsUsed;
+
+    public DelimitedReader(Path file, char delimiter) throws IOException {
+        this(file, delimiter, DEFAULT_BUFFER_SIZE);
+    }
+
+    public DelimitedReader(Path file, char delimiter, int bufferSize) throws IOException {
+        if (delimiter > 0x7f) throw new IllegalArgumentException("Delimiter must be an ASCII character");
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.delimiter = (byte) delimiter;
+        this.bytes = new byte[bufferSize];
+        this.buffer = ByteBuffer.wrap(bytes);
+    }
+
+    /**
+     * Advances to the next row. Returns false once the end of the file has been reached.
+     */
+    public boolean next() throws IOException {
+        fieldCount = 0;
+        charsUsed = 0;
+        int scan = pos;
+        while (true) {
+            int newline = indexOfNewline(scan);
+            if (newline >= 0) {
+                splitRow(pos, newline);
+                consume(newline + 1);
+                return true;
+            }
+            if (eof) {
+                if (pos == limit) return false;
+                splitRow(pos, limit);
+                consume(limit);
+                return true;
+            }
+            scan = limit - pos;
+            fill();
+        }
+    }
+
+    private int indexOfNewline(int from) {
+        byte[] b = bytes;
+        for (int i = from; i < limit; i++) {
+            if (b[i] == '\n') return i;
+        }
+        return -1;
+    }
+
+    private void consume(int next) {
+        rowOffset = consumed;
+        consumed += next - pos;
+        pos = next;
+    }
+
+    private void fill() throws IOException {
+        if (pos > 0) {
+            System.arraycopy(bytes, pos, bytes, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+        }
+        if (limit == bytes.length) {
+            bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            buffer = ByteBuffer.wrap(bytes);
+        }
+        buffer.limit(bytes.length).position(limit);
+        int read = channel.read(buffer);
+        if (read < 0) eof = true;
+        else limit += read;
+    }
+
+    private void splitRow(int start, int end) {
+        if (end > start && bytes[end - 1] == '\r') end--;
+        int fieldStart = start;
+        for (int i = start; i < end; i++) {
+            if (bytes[i] == delimiter) {
+                addField(fieldStart, i);
+                fieldStart = i + 1;
+            }
+        }
+        addField(fieldStart, end);
+    }
+
+    private void addField(int start, int end) {
+        if (fieldCount == fieldStarts.length) growFields();
+        fieldStarts[fieldCount] = start;
+        fieldEnds[fieldCount] = end;
+        charStarts[fieldCount] = UNDECODED;
+        fieldCount++;
+    }
+
+    private void growFields() {
+        int size = fieldStarts.length * 2;
+        fieldStarts = Arrays.copyOf(fieldStarts, size);
+        fieldEnds = Arrays.copyOf(fieldEnds, size);
+        charStarts = Arrays.copyOf(charStarts, size);
+        charEnds = Arrays.copyOf(charEnds, size);
+        views = Arrays.copyOf(views, size);
+    }
+
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * Byte offset of the current row from the start of the file.
+     */
+    public long rowOffset() {
+        return rowOffset;
+    }
+
+    /**
+     * Byte offset of field {@code index} from the start of the current row.
+     */
+    public int fieldByteStart(int index) {
+        return fieldStarts[index] - fieldStarts[0];
+    }
+
+    public int fieldByteEnd(int index) {
+        return fieldEnds[index] - fieldStarts[0];
+    }
+
+    /**
+     * Copies the raw UTF-8 bytes of field {@code index} to {@code dest} at {@code offset}.
+     */
+    public void copyFieldBytes(int index, byte[] dest, int offset) {
+        checkIndex(index);
+        System.arraycopy(bytes, fieldStarts[index], dest, offset, fieldEnds[index] - fieldStarts[index]);
+    }
+
+    /**
+     * Copies the raw UTF-8 bytes of the whole current row, delimiters included and line ending
+     * excluded, to {@code dest} at {@code offset}. The row is {@code fieldByteEnd(fieldCount() - 1)}
+     * bytes long.
+     */
+    public void copyRowBytes(byte[] dest, int offset) {
+        System.arraycopy(bytes, fieldStarts[0], dest, offset, fieldEnds[fieldCount - 1] - fieldStarts[0]);
+    }
+
+    /**
+     * A view of field {@code index}, valid until the next call to {@link #next()}.
+     */
+    public CharSequence field(int index) {
+        checkIndex(index);
+        FieldView view = views[index];
+        if (view == null) {
+            view = new FieldView(index);
+            views[index] = view;
+        }
+        return view;
+    }
+
+    public String getString(int index) {
+        checkIndex(index);
+        decode(index);
+        return new String(chars, charStarts[index], charEnds[index] - charStarts[index]);
+    }
+
+    /**
+     * Parses field {@code index} as a number without decoding it. A blank field reads as -1, any
+     * other content that is not a plain integer throws {@link NumberFormatException}.
+     */
+    public long parseLong(int index) {
+        checkIndex(index);
+        int start = fieldStarts[index];
+        int end = fieldEnds[index];
+        if (isBlank(start, end)) return -1;
+        int i = start;
+        boolean negative = false;
+        if (bytes[i] == '-' || bytes[i] == '+') {
+            negative = bytes[i] == '-';
+            i++;
+        }
+        if (i == end) throw numberFormatException(index);
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9 || value > (Long.MAX_VALUE - digit) / 10) throw numberFormatException(index);
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    private boolean isBlank(int start, int end) {
+        for (int i = start; i < end; i++) {
+            if ((bytes[i] & 0xff) > ' ') return false;
+        }
+        return true;
+    }
+
+    private NumberFormatException numberFormatException(int index) {
+        return new NumberFormatException("For input string: \"" + getString(index) + "\"");
+    }
+
+    /**
+     * Copies every field of the current row into a new list.
+     */
+    public ArrayList<String> toList() {
+        ArrayList<String> row = new ArrayList<>(fieldCount);
+        for (int i = 0; i < fieldCount; i++) row.add(getString(i));
+        return row;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= fieldCount) throw new IndexOutOfBoundsException("Field " + index + " of " + fieldCount);
+    }
+
+    private void decode(int index) {
+        if (charStarts[index] != UNDECODED) return;
+        int start = fieldStarts[index];
+        int length = fieldEnds[index] - start;
+        ensureChars(length);
+        int out = charsUsed;
+        int i = 0;
+        for (; i < length; i++) {
+            byte b = bytes[start + i];
+            if (b < 0) break;
+            chars[out + i] = (char) b;
+        }
+        if (i < length) {
+            CharBuffer target = CharBuffer.wrap(chars, out + i, chars.length - out - i);
+            decoder.reset();
+            decoder.decode(ByteBuffer.wrap(bytes, start + i, length - i), target, true);
+            decoder.flush(target);
+            charEnds[index] = target.position();
+        } else {
+            charEnds[index] = out + length;
+        }
+        charStarts[index] = out;
+        charsUsed = charEnds[index];
+    }
+
+    private void ensureChars(int byteLength) {
+        // UTF-8 never produces more chars than bytes
+        if (charsUsed + byteLength > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(chars.length * 2, charsUsed + byteLength));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private final class FieldView implements CharSequence {
+
+        private final int index;
+
+        private FieldView(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public int length() {
+            decode(index);
+            return charEnds[index] - charStarts[index];
+        }
+
+        @Override
+        public char charAt(int i) {
+            decode(index);
+            if (i < 0 || i >= charEnds[index] - charStarts[index]) throw new IndexOutOfBoundsException(String.valueOf(i));
+            return chars[charStarts[index] + i];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().substring(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return getString(index);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package pdx.pipeline;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lifts several omic files at once on a fixed number of workers. Submitting blocks once the
+ * work queue is full until a worker takes a file from it, files are never lifted on the
+ * submitting thread, and a file that throws is logged and counted without stopping the others.
+ * {@link #perFileThreads} instead gives every file its own virtual thread, for trees on slow
+ * network storage where many files should be read at once.
+ */
+public class FileScheduler {
+
+    /**
+     * Processes one file and returns the number of data rows it contained.
+     */
+    public interface FileTask {
+        long process(File file) throws Exception;
+    }
+
+    private final Logger log = LoggerFactory.getLogger(FileScheduler.class);
+
+    private final FileTask task;
+    private final ExecutorService executor;
+    private final Semaphore openFiles;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger filesLifted = new AtomicInteger();
+    private final AtomicInteger filesFailed = new AtomicInteger();
+    private final AtomicLong rowsLifted = new AtomicLong();
+    private final long startTime = System.nanoTime();
+
+    public FileScheduler(int workers, FileTask task) {
+        if (workers < 1) throw new IllegalArgumentException("At least one file worker is required");
+        this.task = task;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(workers * 2),
+                r -> new Thread(r, "lift-file-" + threadCount.incrementAndGet()),
+                FileScheduler::waitForRoom);
+        this.openFiles = null;
+    }
+
+    /**
+     * Puts a file the executor turned away on its full queue, blocking the submitter until a
+     * worker frees a slot. The crawler thread that found the file waits instead of lifting it.
+     */
+    private static void waitForRoom(Runnable work, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) throw new RejectedExecutionException("File scheduler is shut down");
+        try {
+            executor.getQueue().put(work);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for a file worker", e);
+        }
+    }
+
+    private FileScheduler(ExecutorService executor, Semaphore openFiles, FileTask task) {
+        this.task = task;
+        this.executor = executor;
+        this.openFiles = openFiles;
+    }
+
+    /**
+     * Starts a thread for every submitted file, a virtual thread where the JVM has them (Java 21 and
+     * later) and a platform thread otherwise. Submitting blocks while {@code maxOpenFiles} files are
+     * in flight. The task should hand its CPU heavy work to a bounded pool of its own.
+     */
+    public static FileScheduler perFileThreads(int maxOpenFiles, FileTask task) {
+        if (maxOpenFiles < 1) throw new IllegalArgumentException("At least one open file is required");
+        ExecutorService executor = newVirtualThreadPerTaskExecutor("lift-file-");
+        if (executor == null) {
+            LoggerFactory.getLogger(FileScheduler.class)
+                    .warn("Virtual threads need Java 21 or later, starting a platform thread per file instead");
+            AtomicInteger threadCount = new AtomicInteger();
+            executor = Executors.newCachedThreadPool(r -> new Thread(r, "lift-file-" + threadCount.incrementAndGet()));
+        }
+        return new FileScheduler(executor, new Semaphore(maxOpenFiles), task);
+    }
+
+    /**
+     * Looks up the Java 21 virtual thread API reflectively so the project still builds and runs on
+     * Java 17. Returns null when virtual threads are not available.
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor(String namePrefix) {
+        try {
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 1L);
+            ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, factory);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    public void submit(File file) {
+        if (openFiles != null) openFiles.acquireUninterruptibly();
+        inFlight.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                try {
+                    processIsolated(file);
+                } finally {
+                    inFlight.decrementAndGet();
+                    if (openFiles != null) openFiles.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.decrementAndGet();
+            if (openFiles != null) openFiles.release();
+            throw e;
+        }
+    }
+
+    private void processIsolated(File file) {
+        try {
+            rowsLifted.addAndGet(task.process(file));
+            filesLifted.incrementAndGet();
+        } catch (Exception e) {
+            filesFailed.incrementAndGet();
+            log.error(String.format("Failed to lift %s: %s", file, e), e);
+        }
+    }
+
+    /**
+     * Waits for every submitted file to finish and logs the throughput of the run.
+     */
+    public Summary awaitCompletion() throws InterruptedException {
+        executor.shutdown();
+        while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+            log.info(String.format("Waiting on %d files", inFlight.get()));
+        }
+        Summary summary = new Summary(filesLifted.get(), filesFailed.get(), rowsLifted.get(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+        log.info(summary.toString());
+        return summary;
+    }
+
+    public static class Summary {
+
+        private final int filesLifted;
+        private final int filesFailed;
+        private final long rows;
+        private final long elapsedMillis;
+
+        Summary(int filesLifted, int filesFailed, long rows, long elapsedMillis) {
+            this.filesLifted = filesLifted;
+            this.filesFailed = filesFailed;
+            this.rows = rows;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public int getFilesLifted() {
+            return filesLifted;
+        }
+
+        public int getFilesFailed() {
+            return filesFailed;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public double getFilesPerSecond() {
+            return perSecond(filesLifted + filesFailed);
+        }
+
+        public double getRowsPerSecond() {
+            return perSecond(rows);
+        }
+
+        private double perSecond(long count) {
+            return elapsedMillis == 0 ? count : count * 1000.0 / elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Lifted %d files (%d failed), %d rows in %.1f s: %.2f files/sec, %.0f rows/sec",
+                    filesLifted, filesFailed, rows, elapsedMillis / 1000.0, getFilesPerSecond(), getRowsPerSecond());
+        }
+    }
+}
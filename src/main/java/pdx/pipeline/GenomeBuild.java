@@ -0,0 +1,77 @@
+package pdx.pipeline;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The reference builds a provider can declare in the genome_assembly column. UCSC and GRC
+ * names, bare numbers and patch suffixes are all understood, so Hg19, GRCh37, 37 and
+ * GRCh37.p13 are the same build.
+ */
+public enum GenomeBuild {
+
+    HG18,
+    HG19,
+    HG38;
+
+    /**
+     * Code of a value that names no known build.
+     */
+    public static final int UNKNOWN = -1;
+
+    static final int MAX_CACHED_SPELLINGS = 1024;
+
+    private static final Pattern BUILD = Pattern.compile("(?i)^(?:hg|grch|ncbi|b)?(18|19|36|37|38)(?:\\..*)?$");
+    private static final GenomeBuild[] values = values();
+    private static final Map<String, Integer> cache = new ConcurrentHashMap<>();
+
+    /**
+     * The build named by {@code declared}, or null if it names none.
+     */
+    public static GenomeBuild of(String declared) {
+        int code = codeOf(declared);
+        return code == UNKNOWN ? null : values[code];
+    }
+
+    /**
+     * The ordinal of the build named by {@code declared}, or {@link #UNKNOWN}. Spellings are
+     * remembered, so a sheet only pays for the pattern once per distinct value.
+     */
+    public static int codeOf(String declared) {
+        if (declared == null) return UNKNOWN;
+        Integer code = cache.get(declared);
+        if (code == null) {
+            code = parse(declared.trim());
+            if (cache.size() < MAX_CACHED_SPELLINGS) cache.put(declared, code);
+        }
+        return code;
+    }
+
+    public static GenomeBuild fromCode(int code) {
+        return code == UNKNOWN ? null : values[code];
+    }
+
+    private static int parse(String declared) {
+        Matcher matcher = BUILD.matcher(declared);
+        if (!matcher.matches()) return UNKNOWN;
+        switch (matcher.group(1)) {
+            case "18":
+            case "36":
+                return HG18.ordinal();
+            case "19":
+            case "37":
+                return HG19.ordinal();
+            default:
+                return HG38.ordinal();
+        }
+    }
+
+    /**
+     * The UCSC name, as used in chain file names.
+     */
+    public String getName() {
+        return name().toLowerCase();
+    }
+}
@@ -0,0 +1,30 @@
+package pdx.pipeline;
+
+/**
+ * A (contig id, start, end) triple used as a hash key.
+ */
+final class IntervalKey {
+
+    final int contigId;
+    final int start;
+    final int end;
+
+    IntervalKey(int contigId, int start, int end) {
+        this.contigId = contigId;
+        this.start = start;
+        this.end = end;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof IntervalKey)) return false;
+        IntervalKey other = (IntervalKey) o;
+        return contigId == other.contigId && start == other.start && end == other.end;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * contigId + start) + end;
+    }
+}
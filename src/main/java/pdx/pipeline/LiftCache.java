@@ -0,0 +1,66 @@
+package pdx.pipeline;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+/**
+ * Bounded cache of lift results keyed on (contig id, start, end), shared by every file of a run so
+ * hotspot variants that appear in many files are only lifted once. Eviction is Caffeine's
+ * W-TinyLFU, so coordinates seen in many files stay while one-off rows pass through. Intervals
+ * that do not lift are cached too. A cache belongs to the chain index it was created for.
+ */
+public final class LiftCache implements LiftOverCache {
+
+    private static final int[] NOT_LIFTED = new int[0];
+
+    private final ChainIndex index;
+    private final Cache<IntervalKey, int[]> cache;
+    private final long maximumSize;
+
+    public LiftCache(ChainIndex index, long maximumSize) {
+        if (maximumSize < 1) throw new IllegalArgumentException("The lift cache needs room for at least one entry");
+        this.index = index;
+        this.maximumSize = maximumSize;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .executor(Runnable::run)
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public boolean liftOver(int contigId, int start, int end, int[] lifted) {
+        IntervalKey key = new IntervalKey(contigId, start, end);
+        int[] cached = cache.getIfPresent(key);
+        if (cached == null) {
+            cached = index.liftOver(contigId, start, end, lifted) ? lifted.clone() : NOT_LIFTED;
+            cache.put(key, cached);
+            return cached != NOT_LIFTED;
+        }
+        if (cached == NOT_LIFTED) return false;
+        System.arraycopy(cached, 0, lifted, 0, ChainIndex.RESULT_SIZE);
+        return true;
+    }
+
+    @Override
+    public ChainIndex getChainIndex() {
+        return index;
+    }
+
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    public long getSize() {
+        return cache.estimatedSize();
+    }
+
+    @Override
+    public String toString() {
+        CacheStats stats = cache.stats();
+        return String.format("Lift cache: %d hits, %d misses (%.1f%% hit rate), %d evictions, %d of %d entries used",
+                stats.hitCount(), stats.missCount(), stats.hitRate() * 100, stats.evictionCount(),
+                cache.estimatedSize(), maximumSize);
+    }
+}
@@ -0,0 +1,227 @@
+package pdx.pipeline;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The lift.log of one directory. Rejected rows are queued and written by a background thread
+ * that opens the file once, appends in batches and closes it when the last file lifting into
+ * the directory releases it. Row data is only formatted on the writer thread. The queue is
+ * bounded, so a lift rejecting rows faster than they are written waits for the writer instead of
+ * holding every rejected row. If the writer fails, rejected rows are still counted but dropped.
+ * A log stays registered until its writer has closed the file, and a lift acquiring the directory
+ * meanwhile waits for it, so there is never more than one writer appending to a lift.log.
+ */
+public final class LiftLog {
+
+    public enum Reason {
+        SHORT_ROW,
+        MISSING_COORDINATES,
+        UNMAPPED
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(LiftLog.class);
+
+    private static final int BATCH_SIZE = 1024;
+    private static final int QUEUE_CAPACITY = BATCH_SIZE * 4;
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+    private static final Entry CLOSE = new Entry(-1, null);
+    private static final Map<Path, LiftLog> openLogs = new HashMap<>();
+    private static final Map<Reason, LongAdder> totalRejected = new EnumMap<>(Reason.class);
+
+    static {
+        for (Reason reason : Reason.values()) totalRejected.put(reason, new LongAdder());
+    }
+
+    private final Path logFileLocation;
+    private final BlockingQueue<Entry> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Map<Reason, LongAdder> rejected = new EnumMap<>(Reason.class);
+    private final Thread writerThread;
+    private volatile boolean failed;
+    private int references;
+    private boolean closing;
+
+    private LiftLog(Path logFileLocation) {
+        this.logFileLocation = logFileLocation;
+        for (Reason reason : Reason.values()) rejected.put(reason, new LongAdder());
+        writerThread = new Thread(this::drain, "lift-log-" + logFileLocation.getParent().getFileName());
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Returns the log for {@code directory}, opening it if no other lift is using it and waiting
+     * for the previous log of the directory to close if it is closing. Every call must be matched
+     * by a call to {@link #release()}.
+     */
+    public static synchronized LiftLog acquire(Path directory) {
+        Path key = directory.toAbsolutePath().normalize();
+        boolean interrupted = false;
+        LiftLog liftLog;
+        while ((liftLog = openLogs.get(key)) != null && liftLog.closing) {
+            try {
+                LiftLog.class.wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+        if (liftLog == null) {
+            liftLog = new LiftLog(key.resolve("lift.log"));
+            openLogs.put(key, liftLog);
+        }
+        liftLog.references++;
+        return liftLog;
+    }
+
+    /**
+     * Gives up one reference. The last reference waits for queued rows to be written and closes
+     * the file before the directory can be acquired again.
+     */
+    public void release() {
+        synchronized (LiftLog.class) {
+            if (--references > 0) return;
+            closing = true;
+        }
+        // an interrupted lift must still hand CLOSE to the writer, or nothing would stop it
+        boolean interrupted = Thread.interrupted();
+        enqueue(CLOSE);
+        while (writerThread.isAlive()) {
+            try {
+                writerThread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        synchronized (LiftLog.class) {
+            openLogs.remove(logFileLocation.getParent(), this);
+            LiftLog.class.notifyAll();
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    public void reject(Reason reason, int rowIndex, List<String> row) {
+        rejected.get(reason).increment();
+        totalRejected.get(reason).increment();
+        enqueue(new Entry(rowIndex, row));
+    }
+
+    /**
+     * Waits for room in the queue, giving up once the writer has failed since nothing would ever
+     * take the entry.
+     */
+    private void enqueue(Entry entry) {
+        try {
+            while (!failed) {
+                if (queue.offer(entry, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * True once the writer thread stopped on an error, after which rejected rows are only counted.
+     */
+    public boolean hasFailed() {
+        return failed;
+    }
+
+    public long getRejectedCount(Reason reason) {
+        return rejected.get(reason).sum();
+    }
+
+    public static long getTotalRejected(Reason reason) {
+        return totalRejected.get(reason).sum();
+    }
+
+    public Path getLogFileLocation() {
+        return logFileLocation;
+    }
+
+    private void drain() {
+        List<Entry> batch = new ArrayList<>(BATCH_SIZE);
+        StringBuilder line = new StringBuilder(256);
+        BufferedWriter writer = null;
+        boolean closing = false;
+        try {
+            while (!closing) {
+                batch.add(queue.take());
+                queue.drainTo(batch, BATCH_SIZE - 1);
+                for (Entry entry : batch) {
+                    if (entry == CLOSE) {
+                        closing = true;
+                        continue;
+                    }
+                    if (writer == null) writer = open();
+                    formatEntry(entry, line);
+                    if (log.isInfoEnabled()) log.info(line.toString());
+                    writer.append(line).append(System.lineSeparator());
+                }
+                batch.clear();
+                if (writer != null) writer.flush();
+            }
+        } catch (InterruptedException e) {
+            failed = true;
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            failed = true;
+            log.error(String.format("IOError writing to log file %s, further rejected rows are not logged", logFileLocation), e);
+        } finally {
+            if (failed) queue.clear();
+            closeQuietly(writer);
+        }
+    }
+
+    private BufferedWriter open() throws IOException {
+        return Files.newBufferedWriter(logFileLocation, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private static void formatEntry(Entry entry, StringBuilder line) {
+        line.setLength(0);
+        line.append("LiftOver: Genomic coordinates not lifted for row at index: ").append(entry.rowIndex)
+                .append(". ").append(System.lineSeparator()).append(" Row data : [");
+        for (int i = 0; i < entry.row.size(); i++) {
+            if (i > 0) line.append(", ");
+            line.append(entry.row.get(i));
+        }
+        line.append(']');
+    }
+
+    private void closeQuietly(BufferedWriter writer) {
+        if (writer == null) return;
+        try {
+            writer.close();
+        } catch (IOException e) {
+            log.error(String.format("IOError closing log file %s", logFileLocation), e);
+        }
+    }
+
+    private static final class Entry {
+
+        final int rowIndex;
+        final List<String> row;
+
+        Entry(int rowIndex, List<String> row) {
+            this.rowIndex = rowIndex;
+            this.row = row;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package pdx.pipeline;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Record of the files an earlier run lifted, kept as a TSV next to the UPDOG outputs. Each line
+ * holds the input path, size, modification time and SHA-256, the SHA-256 of the chain file of
+ * every build rows could be lifted from, or {@code -} for a build whose chain file was missing,
+ * the tool version, the output written and how long the lift took. A file is only lifted again
+ * when one of these no longer matches or its output is gone, so adding, removing or replacing the
+ * chain file of any build lifts every file again.
+ */
+public class LiftManifest {
+
+    public static final String FILE_NAME = "lift-manifest.tsv";
+
+    private static final Logger log = LoggerFactory.getLogger(LiftManifest.class);
+
+    private static final String HEADER = "input\tsize\tmodified\tsha256\tchain_sha256s\tversion\toutput\tlift_millis";
+    private static final String NO_OUTPUT = "-";
+    private static final String NO_CHAIN = "-";
+
+    private final Path manifestFile;
+    private final String chainDigest;
+    private final String version;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicInteger filesSkipped = new AtomicInteger();
+    private final AtomicLong millisSaved = new AtomicLong();
+
+    /**
+     * @param chainDigests the SHA-256 of the chain file of each build, null for a build whose
+     *                     chain file is missing
+     */
+    public LiftManifest(Path manifestFile, Map<GenomeBuild, String> chainDigests, String version) throws IOException {
+        this.manifestFile = manifestFile;
+        this.chainDigest = formatChainDigests(chainDigests);
+        this.version = version;
+        if (Files.exists(manifestFile)) read();
+    }
+
+    private static String formatChainDigests(Map<GenomeBuild, String> chainDigests) {
+        StringJoiner joined = new StringJoiner(",");
+        new TreeMap<>(chainDigests).forEach((build, digest) -> joined.add(build.getName() + "=" + (digest == null ? NO_CHAIN : digest)));
+        return joined.toString();
+    }
+
+    private void read() throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(manifestFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // inputs are absolute paths, so this also skips the header of an older manifest
+                if (line.startsWith("input\t") || line.isEmpty()) continue;
+                String[] fields = line.split("\t", -1);
+                if (fields.length != 8) {
+                    log.warn(String.format("Ignoring malformed line in %s: %s", manifestFile, line));
+                    continue;
+                }
+                try {
+                    Entry entry = new Entry(fields[0], Long.parseLong(fields[1]), Long.parseLong(fields[2]), fields[3],
+                            fields[4], fields[5], fields[6], Long.parseLong(fields[7]));
+                    entries.put(entry.input, entry);
+                } catch (NumberFormatException e) {
+                    log.warn(String.format("Ignoring malformed line in %s: %s", manifestFile, line));
+                }
+            }
+        }
+        log.info(String.format("Read %d entries from %s", entries.size(), manifestFile));
+    }
+
+    /**
+     * Returns true, and counts the file as skipped, when {@code input} was lifted by an earlier run
+     * with the same chain files and tool version, neither the input nor its output has changed and
+     * the output is still written to {@code output}. A file whose size and modification time match
+     * is trusted without hashing it again.
+     */
+    public boolean isUnchanged(File input, Path output) throws IOException {
+        Entry entry = entries.get(keyOf(input));
+        if (entry == null || !entry.chainDigest.equals(chainDigest) || !entry.version.equals(version)) return false;
+        if (!entry.output.equals(NO_OUTPUT)
+                && (!entry.output.equals(output.toAbsolutePath().toString()) || !Files.exists(output))) return false;
+        if (entry.size != input.length()) return false;
+        if (entry.modified != input.lastModified()) {
+            if (!entry.digest.equals(Digests.toHex(Digests.sha256(input.toPath())))) return false;
+            entries.put(entry.input, entry.withModified(input.lastModified()));
+        }
+        filesSkipped.incrementAndGet();
+        millisSaved.addAndGet(entry.liftMillis);
+        return true;
+    }
+
+    /**
+     * Records a lift of {@code input}. Pass a null output when nothing was lifted.
+     */
+    public void recordLift(File input, Path output, long liftMillis) throws IOException {
+        String key = keyOf(input);
+        entries.put(key, new Entry(key, input.length(), input.lastModified(), Digests.toHex(Digests.sha256(input.toPath())),
+                chainDigest, version, output == null ? NO_OUTPUT : output.toAbsolutePath().toString(), liftMillis));
+    }
+
+    /**
+     * Writes the manifest to a temporary file and moves it into place.
+     */
+    public void save() throws IOException {
+        Path temp = manifestFile.resolveSibling(manifestFile.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.newLine();
+            for (Entry entry : new TreeMap<>(entries).values()) {
+                writer.write(String.join("\t", entry.input, String.valueOf(entry.size), String.valueOf(entry.modified),
+                        entry.digest, entry.chainDigest, entry.version, entry.output, String.valueOf(entry.liftMillis)));
+                writer.newLine();
+            }
+        }
+        Files.move(temp, manifestFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public int getFilesSkipped() {
+        return filesSkipped.get();
+    }
+
+    public long getMillisSaved() {
+        return millisSaved.get();
+    }
+
+    public Path getManifestFile() {
+        return manifestFile;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Skipped %d unchanged files, saving about %.1f s of lifting", getFilesSkipped(), getMillisSaved() / 1000.0);
+    }
+
+    private static String keyOf(File input) throws IOException {
+        return input.getCanonicalPath();
+    }
+
+    private static class Entry {
+
+        final String input;
+        final long size;
+        final long modified;
+        final String digest;
+        final String chainDigest;
+        final String version;
+        final String output;
+        final long liftMillis;
+
+        Entry(String input, long size, long modified, String digest, String chainDigest, String version, String output, long liftMillis) {
+            this.input = input;
+            this.size = size;
+            this.modified = modified;
+            this.digest = digest;
+            this.chainDigest = chainDigest;
+            this.version = version;
+            this.output = output;
+            this.liftMillis = liftMillis;
+        }
+
+        Entry withModified(long modified) {
+            return new Entry(input, size, modified, digest, chainDigest, version, output, liftMillis);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package pdx.pipeline;
+
+/**
+ * Answers lifts for a {@link ChainIndex} from previously lifted coordinates, lifting and
+ * remembering the ones it has not seen.
+ */
+public interface LiftOverCache {
+
+    /**
+     * Same contract as {@link ChainIndex#liftOver(int, int, int, int[])}.
+     */
+    boolean liftOver(int contigId, int start, int end, int[] lifted);
+
+    ChainIndex getChainIndex();
+}
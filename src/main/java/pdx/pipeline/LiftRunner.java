@@ -8,14 +8,18 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.stereotype.Component;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 @Component
 public class LiftRunner implements CommandLineRunner {
@@ -23,14 +27,32 @@ public class LiftRunner implements CommandLineRunner {
     @Value("${pdxfinder.root.dir}")
     private String finderRootDir;
 
+    @Value("${pdx.liftover.version:dev}")
+    private String toolVersion = "dev";
+
     private Logger log = LoggerFactory.getLogger(LiftRunner.class);
 
     private OmicCrawler crawler = new OmicCrawler();
     private XlsxReader reader = new XlsxReader();
     private OmicHarmonizer harmonizer = new OmicHarmonizer(CHAINFILE);
     private TsvUtils tsvUtil = new TsvUtils();
+    private int fileWorkers = 1;
+    private int readWorkers = 1;
+    private int writeWorkers = 1;
+    private boolean pipelined = false;
+    private boolean virtualThreads = false;
+    private int maxOpenFiles = 64;
+    private int liftWorkers = Runtime.getRuntime().availableProcessors();
+    private long sheetMemoryBytes = Runtime.getRuntime().maxMemory() / 4;
+    private Semaphore sheetMemory;
+    private boolean streaming = false;
+    private boolean patching = false;
+    private boolean incremental = false;
+    private LiftManifest manifest;
 
     private static final String CHAINFILE = "src/main/resources/LiftOverResources/hg19ToHg38.over.chain.gz";
+    // rough size of a sheet in memory relative to the file it is read from
+    private static final int XLSX_EXPANSION = 8;
 
     @Override
     public void run(String... args) throws Exception {
@@ -41,42 +63,289 @@ public class LiftRunner implements CommandLineRunner {
         parser.accepts("MUT");
         parser.accepts("CNA");
         parser.accepts("DIR").withRequiredArg();
+        parser.acceptsAll(Arrays.asList("THREADS", "threads")).withRequiredArg().ofType(Integer.class);
+        parser.accepts("FILETHREADS").withRequiredArg().ofType(Integer.class);
+        parser.accepts("STREAM");
+        parser.accepts("PATCH");
+        parser.accepts("COMPRESS").withRequiredArg();
+        parser.accepts("COMPILECHAIN");
+        parser.accepts("CHAIN").withRequiredArg();
+        parser.accepts("SWEEP");
+        parser.accepts("CACHESIZE").withRequiredArg().ofType(Integer.class);
+        parser.accepts("LIFTCACHE").withRequiredArg();
+        parser.accepts("INCREMENTAL");
+        parser.accepts("CRAWLTHREADS").withRequiredArg().ofType(Integer.class);
+        parser.accepts("PIPELINE");
+        parser.accepts("READTHREADS").withRequiredArg().ofType(Integer.class);
+        parser.accepts("WRITETHREADS").withRequiredArg().ofType(Integer.class);
+        parser.accepts("VIRTUAL").withOptionalArg().ofType(Integer.class);
+        parser.accepts("LIFTTHREADS").withRequiredArg().ofType(Integer.class);
+        parser.accepts("SHEETMEMORY").withRequiredArg().ofType(Integer.class);
         OptionSet options = parser.parse(args);
 
         if (options.has("DIR")) finderRootDir = (String) options.valueOf("DIR");
+        if (options.has("THREADS")) harmonizer.setParallelism((Integer) options.valueOf("THREADS"));
+        if (options.has("FILETHREADS")) fileWorkers = (Integer) options.valueOf("FILETHREADS");
+        if (options.has("STREAM")) streaming = true;
+        if (options.has("PATCH")) patching = true;
+        if (options.has("SWEEP")) harmonizer.setSweep(true);
+        if (options.has("INCREMENTAL")) incremental = true;
+        if (options.has("CRAWLTHREADS")) crawler.setParallelism((Integer) options.valueOf("CRAWLTHREADS"));
+        if (options.has("PIPELINE")) pipelined = true;
+        if (options.has("READTHREADS")) readWorkers = (Integer) options.valueOf("READTHREADS");
+        if (options.has("WRITETHREADS")) writeWorkers = (Integer) options.valueOf("WRITETHREADS");
+        if (options.has("VIRTUAL")) {
+            virtualThreads = true;
+            if (options.hasArgument("VIRTUAL")) maxOpenFiles = (Integer) options.valueOf("VIRTUAL");
+        }
+        if (options.has("LIFTTHREADS")) liftWorkers = (Integer) options.valueOf("LIFTTHREADS");
+        if (options.has("SHEETMEMORY")) sheetMemoryBytes = (Integer) options.valueOf("SHEETMEMORY") * 1024L * 1024L;
+        if (!virtualThreads && (options.has("LIFTTHREADS") || options.has("SHEETMEMORY")))
+            log.warn("--LIFTTHREADS and --SHEETMEMORY only apply with --VIRTUAL");
+        if (virtualThreads && pipelined) log.warn("--VIRTUAL replaces --PIPELINE");
+        else if (pipelined && streaming) log.warn("--STREAM already overlaps reading, lifting and writing, --PIPELINE is ignored");
+        else if (pipelined && patching) log.warn("--PATCH already overlaps reading, lifting and writing, --PIPELINE is ignored");
+        if (harmonizer.isSweep() && (options.has("CACHESIZE") || options.has("LIFTCACHE"))) {
+            log.warn("--SWEEP walks the chain without a lift cache, --CACHESIZE and --LIFTCACHE are ignored");
+        } else if (options.has("LIFTCACHE")) {
+            long maximumSize = options.has("CACHESIZE") ? (Integer) options.valueOf("CACHESIZE") : PersistentLiftCache.DEFAULT_MAXIMUM_SIZE;
+            harmonizer.setLiftCache(PersistentLiftCache.open(Paths.get((String) options.valueOf("LIFTCACHE")), harmonizer.getChainIndex(), maximumSize));
+        } else if (options.has("CACHESIZE")) {
+            harmonizer.setLiftCache(new LiftCache(harmonizer.getChainIndex(), (Integer) options.valueOf("CACHESIZE")));
+        }
+        if (options.has("COMPRESS"))
+            tsvUtil.setCompression(TsvUtils.Compression.valueOf(((String) options.valueOf("COMPRESS")).toUpperCase()));
+        for (Object chain : options.valuesOf("CHAIN")) setChainFile((String) chain);
+        if (options.has("COMPILECHAIN")) compileChains();
         if (options.has("CNA")) crawler.setCrawlerSetting(OmicHarmonizer.OMIC.CNA);
         if (options.has("MUT")) crawler.setCrawlerSetting(OmicHarmonizer.OMIC.MUT);
         if (options.has("LIFT"))runLiftOver();
     }
 
-    public void runLiftOver() throws IOException {
+    /**
+     * Compiles the chain file of every build rows can be lifted from, skipping those not present.
+     */
+    private void compileChains() throws IOException {
+        for (Map.Entry<GenomeBuild, String> chain : harmonizer.getLifterPool().getChainFiles().entrySet()) {
+            if (Files.isRegularFile(Paths.get(chain.getValue()))) ChainIndexCache.compile(chain.getValue());
+            else log.info(String.format("No %s chain file at %s to compile", chain.getKey().getName(), chain.getValue()));
+        }
+    }
+
+    /**
+     * Takes a --CHAIN value such as hg18=/data/hg18ToHg38.over.chain.gz.
+     */
+    private void setChainFile(String chain) {
+        int split = chain.indexOf('=');
+        GenomeBuild build = split > 0 ? GenomeBuild.of(chain.substring(0, split)) : null;
+        if (build == null) throw new IllegalArgumentException(String.format("--CHAIN takes <build>=<chain file>, not %s", chain));
+        harmonizer.getLifterPool().setChainFile(build, chain.substring(split + 1));
+    }
+
+    public void runLiftOver() throws IOException, InterruptedException {
         System.out.println("Run directory: " + finderRootDir);
+        ChainIndex chainIndex = ChainIndexRegistry.get(CHAINFILE);
+        log.info(String.format("Chain index %s ready, load took %d ms", chainIndex.getChainPath(), chainIndex.getLoadTimeMillis()));
+
+        if (incremental) manifest = new LiftManifest(getManifestPath(), getChainDigests(chainIndex), toolVersion);
+        if (virtualThreads) runWithVirtualThreads();
+        else if (pipelined && !streaming && !patching) runPipeline();
+        else runScheduler(new FileScheduler(fileWorkers, this::liftFile));
+        if (incremental) {
+            manifest.save();
+            log.info(manifest.toString());
+        }
+        log.info(String.format("Rows not lifted: %d short rows, %d missing coordinates, %d unmapped",
+                LiftLog.getTotalRejected(LiftLog.Reason.SHORT_ROW),
+                LiftLog.getTotalRejected(LiftLog.Reason.MISSING_COORDINATES),
+                LiftLog.getTotalRejected(LiftLog.Reason.UNMAPPED)));
+        if (harmonizer.getSegmentsResized() > 0 || harmonizer.getSegmentsOnOppositeStrand() > 0)
+            log.info(String.format("CNA segments lifted with a changed length: %d, to the opposite strand: %d",
+                    harmonizer.getSegmentsResized(), harmonizer.getSegmentsOnOppositeStrand()));
+        LiftOverCache liftCache = harmonizer.getLiftCache();
+        if (liftCache instanceof Closeable) ((Closeable) liftCache).close();
+        if (liftCache != null) log.info(liftCache.toString());
+    }
+
+    /**
+     * The SHA-256 of the chain file of every build rows can be lifted from, null for those not
+     * present. The default build's is taken from its already loaded index.
+     */
+    private Map<GenomeBuild, String> getChainDigests(ChainIndex defaultIndex) throws IOException {
+        Map<GenomeBuild, String> digests = new EnumMap<>(GenomeBuild.class);
+        LifterPool lifters = harmonizer.getLifterPool();
+        for (Map.Entry<GenomeBuild, String> chain : lifters.getChainFiles().entrySet()) {
+            Path chainFile = Paths.get(chain.getValue());
+            if (chain.getKey() == lifters.getDefaultBuild()) digests.put(chain.getKey(), Digests.toHex(defaultIndex.getChainDigest()));
+            else digests.put(chain.getKey(), Files.isRegularFile(chainFile) ? Digests.toHex(Digests.sha256(chainFile)) : null);
+        }
+        return digests;
+    }
+
+    private void runScheduler(FileScheduler scheduler) throws IOException, InterruptedException {
+        try {
+            int found = crawler.crawl(new File(finderRootDir), scheduler::submit);
+            log.info(String.format("Crawler found %d omic files", found));
+        } finally {
+            scheduler.awaitCompletion();
+        }
+    }
+
+    private void runWithVirtualThreads() throws IOException, InterruptedException {
+        harmonizer.setLiftSlots(new Semaphore(liftWorkers));
+        sheetMemory = new Semaphore(toKilobytes(sheetMemoryBytes));
+        log.info(String.format("Reading up to %d files at once into %d MB of sheets, lifting %d at once",
+                maxOpenFiles, sheetMemoryBytes >> 20, liftWorkers));
+        try {
+            runScheduler(FileScheduler.perFileThreads(maxOpenFiles, this::liftFileOnOwnThread));
+        } finally {
+            harmonizer.setLiftSlots(null);
+        }
+    }
+
+    /**
+     * Runs the whole file on its own thread. Only lifting takes one of the --LIFTTHREADS lift
+     * slots, a whole sheet at a time or, for a streamed file, a batch of rows at a time, so reads
+     * and writes of slow storage overlap the lifting of other files. Whole sheets held at once are
+     * limited to --SHEETMEMORY: a file waits for its estimated size to be free before it is read,
+     * and a file larger than the whole budget is streamed instead.
+     */
+    private long liftFileOnOwnThread(File f) throws Exception {
+        if (isStreamed(f)) return liftFile(f);
+        int sheetKilobytes = toKilobytes(estimateSheetBytes(f));
+        if (sheetKilobytes > toKilobytes(sheetMemoryBytes)) {
+            log.info(String.format("Streaming %s, it is larger than the %d MB of --SHEETMEMORY", f, sheetMemoryBytes >> 20));
+            return liftStreamed(f);
+        }
+        sheetMemory.acquire(sheetKilobytes);
+        try {
+            SheetJob job = readSheet(f);
+            if (job == null) return 0;
+            writeSheet(liftSheet(job));
+            return job.rows;
+        } finally {
+            sheetMemory.release(sheetKilobytes);
+        }
+    }
+
+    private long estimateSheetBytes(File f) {
+        return isXlsx(f) ? f.length() * XLSX_EXPANSION : f.length();
+    }
 
-        List<File> omicFiles = crawler.run(new File(finderRootDir));
-
-        omicFiles.forEach(f -> {
-            OmicHarmonizer.OMIC dataType = determineOmicType(f);
-            ArrayList<ArrayList<String>> sheet = getSheet(f);
-            logPreLiftStatistics(f,sheet);
-            ArrayList<ArrayList<String>> outFile;
-
-            try {
-                outFile = harmonizer.runLiftOver(sheet, f.toString(), dataType);
-                if (!(outFile.size() == 1 || outFile.isEmpty()))
-                    makeOutFileDirAndSave(f, outFile);
-                else
-                    log.info(String.format("No data lifted for %s",f.getCanonicalPath()));
-            } catch (IOException e) {
-                log.error(e.toString());
+    private static int toKilobytes(long bytes) {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(1, bytes >> 10));
+    }
+
+    private void runPipeline() throws IOException, InterruptedException {
+        StagedPipeline<File> pipeline = StagedPipeline.<File>from("crawl")
+                .then("read", readWorkers, this::readSheet)
+                .then("lift", fileWorkers, this::liftSheet)
+                .then("write", writeWorkers, this::writeSheet)
+                .start();
+        try {
+            int found = crawler.crawl(new File(finderRootDir), pipeline::submit);
+            log.info(String.format("Crawler found %d omic files", found));
+        } finally {
+            pipeline.awaitCompletion();
+        }
+    }
+
+    private boolean isUnchanged(File f) throws IOException {
+        if (!manifest.isUnchanged(f, getOutFilePath(f))) return false;
+        log.info(String.format("Skipping unchanged file %s", f.getCanonicalPath()));
+        return true;
+    }
+
+    private void recordLift(File f, long liftNanos) throws IOException {
+        Path outFile = getOutFilePath(f);
+        manifest.recordLift(f, Files.exists(outFile) ? outFile : null, TimeUnit.NANOSECONDS.toMillis(liftNanos));
+    }
+
+    private Path getManifestPath() {
+        Path outputRoot = Paths.get(finderRootDir);
+        Path updog = outputRoot.resolve("data").resolve("UPDOG");
+        return (Files.isDirectory(updog) ? updog : outputRoot).resolve(LiftManifest.FILE_NAME);
+    }
+
+    private long liftFile(File f) throws IOException {
+        if (isStreamed(f)) return liftStreamed(f);
+        SheetJob job = readSheet(f);
+        if (job == null) return 0;
+        writeSheet(liftSheet(job));
+        return job.rows;
+    }
+
+    private long liftStreamed(File f) throws IOException {
+        if (incremental && isUnchanged(f)) return 0;
+        long start = System.nanoTime();
+        long rows = streamFile(f, determineOmicType(f));
+        if (incremental) recordLift(f, System.nanoTime() - start);
+        return rows;
+    }
+
+    private SheetJob readSheet(File f) throws IOException {
+        if (incremental && isUnchanged(f)) return null;
+        OmicHarmonizer.OMIC dataType = determineOmicType(f);
+        ColumnarSheet sheet = getSheet(f, harmonizer.newSheetBuilder(dataType));
+        if (sheet == null) return null;
+        logPreLiftStatistics(f,sheet);
+        return new SheetJob(f, dataType, sheet);
+    }
+
+    private SheetJob liftSheet(SheetJob job) throws IOException {
+        long start = System.nanoTime();
+        job.lifted = harmonizer.runLiftOver(job.sheet, job.file.toString(), job.dataType);
+        job.liftNanos = System.nanoTime() - start;
+        return job;
+    }
+
+    private Void writeSheet(SheetJob job) throws IOException {
+        if (job.lifted > 0)
+            makeOutFileDirAndSave(job.file, job.sheet);
+        else
+            log.info(String.format("No data lifted for %s",job.file.getCanonicalPath()));
+        if (incremental) recordLift(job.file, job.liftNanos);
+        return null;
+    }
+
+    private long streamFile(File f, OmicHarmonizer.OMIC dataType) throws IOException {
+        Path outFile = getOutFilePath(f);
+        long rowsRead;
+        long rowsLifted;
+        try (TsvUtils.TsvWriter writer = tsvUtil.openTsvWriter(outFile.toString())) {
+            if (isPatched(f)) {
+                OmicHarmonizer.PatchLift patchLift = harmonizer.openPatchLift(f.toString(), dataType, writer);
+                try (patchLift) {
+                    tsvUtil.patchCsv(f.getAbsolutePath(), getDelimiter(f), patchLift);
+                }
+                rowsRead = patchLift.getRowsRead();
+                rowsLifted = patchLift.getRowsLifted();
+            } else {
+                OmicHarmonizer.LiftStream liftStream = harmonizer.openLiftStream(f.toString(), dataType, writer);
+                try (liftStream) {
+                    if (isXlsx(f)) reader.streamFirstSheet(f, liftStream);
+                    else tsvUtil.streamCsv(f.getAbsolutePath(), getDelimiter(f), liftStream);
+                }
+                rowsRead = liftStream.getRowsRead();
+                rowsLifted = liftStream.getRowsLifted();
             }
-        });
+        }
+        if (rowsLifted == 0) {
+            Files.deleteIfExists(outFile);
+            log.info(String.format("No data lifted for %s",f.getCanonicalPath()));
+        }
+        return rowsRead;
     }
 
-    private void logPreLiftStatistics(File file, ArrayList<ArrayList<String>> sheet) {
-        String stats = String.format("%s Contains %d preliftedData points", file.getName(), sheet.size());
+    private void logPreLiftStatistics(File file, ColumnarSheet sheet) {
+        String stats = String.format("%s Contains %d preliftedData points", file.getName(), sheet.getRowCount());
     }
 
-    private void makeOutFileDirAndSave(File f,ArrayList<ArrayList<String>> liftedSheet) throws IOException {
+    private void makeOutFileDirAndSave(File f, ColumnarSheet liftedSheet) throws IOException {
+        tsvUtil.writeTSV(liftedSheet, getOutFilePath(f).toString());
+    }
+
+    private Path getOutFilePath(File f) throws IOException {
 
         Path filePath = Paths.get(f.toURI());
 
@@ -92,14 +361,14 @@ public class LiftRunner implements CommandLineRunner {
         else sourceFolder = outputRoot;
 
         Path sourceData = Paths.get(sourceFolder.toString() + "/" + parentDataDir);
-        Path outFile = Paths.get(sourceData.toString() + "/"+f.getName() + ".lfted");
+        Path outFile = Paths.get(sourceData.toString() + "/"+f.getName() + ".lfted" + tsvUtil.getCompression().getSuffix());
 
         if(!sourceFolder.toFile().exists())
             Files.createDirectory(sourceFolder);
         if(!sourceData.toFile().exists())
             Files.createDirectory(sourceData);
 
-        tsvUtil.writeTSV(liftedSheet, outFile.toString());
+        return outFile;
     }
 
     private OmicHarmonizer.OMIC determineOmicType(File f){
@@ -108,16 +377,37 @@ public class LiftRunner implements CommandLineRunner {
        else return null;
     }
 
-    private ArrayList<ArrayList<String>> getSheet(File fileToRead){
-        String filename = fileToRead.getName();
-        ArrayList<ArrayList<String>> sheet;
+    private boolean isStreamed(File file) {
+        return streaming && (getDelimiter(file) != null || isXlsx(file)) || isPatched(file);
+    }
 
-        if (filename.matches(".+xlsx")){
-            sheet = getXlsxSheet(fileToRead);
-        }else if (filename.matches(".+tsv")) {
-            sheet = tsvUtil.readCsv(fileToRead.getAbsolutePath(), "\t");
-        } else if (filename.matches(".+csv")) {
-            sheet = tsvUtil.readCsv(fileToRead.getAbsolutePath(), ",");
+    /**
+     * Delimited files are patched in place of streaming when --PATCH is given, XLSX files have no
+     * bytes to patch and are lifted as usual.
+     */
+    private boolean isPatched(File file) {
+        return patching && getDelimiter(file) != null;
+    }
+
+    private boolean isXlsx(File file){
+        return file.getName().matches(".+xlsx");
+    }
+
+    private String getDelimiter(File file){
+        String filename = file.getName();
+        if (filename.matches(".+tsv")) return "\t";
+        else if (filename.matches(".+csv")) return ",";
+        else return null;
+    }
+
+    private ColumnarSheet getSheet(File fileToRead, ColumnarSheet.Builder builder){
+        String delimiter = getDelimiter(fileToRead);
+        ColumnarSheet sheet;
+
+        if (isXlsx(fileToRead)){
+            sheet = getXlsxSheet(fileToRead, builder);
+        }else if (delimiter != null) {
+            sheet = getDelimitedSheet(fileToRead, delimiter, builder);
         } else {
             System.err.println("FILETYPE NOT SUPPORTED");
             sheet = null;
@@ -126,10 +416,34 @@ public class LiftRunner implements CommandLineRunner {
     }
 
 
-    private ArrayList<ArrayList<String>> getXlsxSheet(File f){
-        ArrayList<ArrayList<String>> sheet = null;
+    private static class SheetJob {
+
+        final File file;
+        final OmicHarmonizer.OMIC dataType;
+        final long rows;
+        final ColumnarSheet sheet;
+        int lifted;
+        long liftNanos;
+
+        SheetJob(File file, OmicHarmonizer.OMIC dataType, ColumnarSheet sheet) {
+            this.file = file;
+            this.dataType = dataType;
+            this.sheet = sheet;
+            this.rows = Math.max(sheet.getRowCount() - 1, 0);
+        }
+
+        @Override
+        public String toString() {
+            return file.toString();
+        }
+    }
+
+    private ColumnarSheet getXlsxSheet(File f, ColumnarSheet.Builder builder){
+        ColumnarSheet sheet = null;
         try {
-            sheet = reader.readFirstSheet(f);
+            if (!f.exists()) return null;
+            reader.streamFirstSheet(f, builder);
+            sheet = builder.build();
             log.info(String.format("Lifting file %s", f.getCanonicalFile()));
         } catch (IOException e) {
             log.error(e.toString());
@@ -137,4 +451,13 @@ public class LiftRunner implements CommandLineRunner {
         return sheet;
     }
 
+    private ColumnarSheet getDelimitedSheet(File f, String delimiter, ColumnarSheet.Builder builder){
+        try {
+            return tsvUtil.readColumnar(f.getAbsolutePath(), delimiter, builder);
+        } catch (IOException e) {
+            log.error(String.format("Could not read %s: %s", f, e));
+            return null;
+        }
+    }
+
 }
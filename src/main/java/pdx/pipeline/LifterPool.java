@@ -0,0 +1,105 @@
+package pdx.pipeline;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One lifter per genome build a sheet can declare, all lifting to {@link #getTargetBuild()}.
+ * The lifter of the default build is the harmonizer's own, the others are created the first
+ * time a row declares their build and load their chain index through the
+ * {@link ChainIndexRegistry} on first use. Rows already on the target build need no lifter and
+ * are passed through. A chain for hg18 is looked for next to the default chain file as
+ * {@code hg18ToHg38.over.chain.gz} unless another file is set with {@link #setChainFile}.
+ */
+public class LifterPool {
+
+    private static final Logger log = LoggerFactory.getLogger(LifterPool.class);
+
+    private final GenomeBuild targetBuild = GenomeBuild.HG38;
+    private final GenomeBuild defaultBuild = GenomeBuild.HG19;
+    private final PDXLiftOver defaultLifter;
+    private final String defaultChainFile;
+    private final Map<GenomeBuild, String> chainFiles = new ConcurrentHashMap<>();
+    private final Map<GenomeBuild, PDXLiftOver> lifters = new ConcurrentHashMap<>();
+    private final Set<GenomeBuild> missingChains = ConcurrentHashMap.newKeySet();
+
+    public LifterPool(PDXLiftOver defaultLifter, String defaultChainFile) {
+        this.defaultLifter = defaultLifter;
+        this.defaultChainFile = defaultChainFile;
+        chainFiles.put(GenomeBuild.HG18, Paths.get(defaultChainFile).resolveSibling(chainFileName(GenomeBuild.HG18)).toString());
+    }
+
+    private String chainFileName(GenomeBuild build) {
+        String target = targetBuild.getName();
+        return build.getName() + "To" + Character.toUpperCase(target.charAt(0)) + target.substring(1) + ".over.chain.gz";
+    }
+
+    /**
+     * Lifts rows declaring {@code build} with {@code chainFile}.
+     */
+    public void setChainFile(GenomeBuild build, String chainFile) {
+        if (build == targetBuild || build == defaultBuild) {
+            throw new IllegalArgumentException(String.format("Rows on %s are %s, no chain file can be set for them",
+                    build.getName(), build == targetBuild ? "passed through" : "lifted with the default chain file"));
+        }
+        chainFiles.put(build, chainFile);
+        lifters.remove(build);
+        missingChains.remove(build);
+    }
+
+    /**
+     * True when rows declaring {@code build} are already on the target build.
+     */
+    public boolean isPassThrough(GenomeBuild build) {
+        return build == targetBuild;
+    }
+
+    /**
+     * The lifter for rows declaring {@code build}, the default build's for null. Returns null,
+     * logging it once, when there is no chain file for the build.
+     */
+    public PDXLiftOver lifterFor(GenomeBuild build) {
+        if (build == null || build == defaultBuild) return defaultLifter;
+        PDXLiftOver lifter = lifters.get(build);
+        if (lifter != null) return lifter;
+        String chainFile = chainFiles.get(build);
+        if (chainFile == null || !new File(chainFile).isFile()) {
+            if (missingChains.add(build)) {
+                log.error(String.format("No chain file to lift %s rows to %s%s, they are not lifted. Pass one with --CHAIN=%s=<chain file>",
+                        build.getName(), targetBuild.getName(), chainFile == null ? "" : " at " + chainFile, build.getName()));
+            }
+            return null;
+        }
+        return lifters.computeIfAbsent(build, b -> {
+            PDXLiftOver pooled = new PDXLiftOver();
+            pooled.setChainFileURI(chainFile);
+            return pooled;
+        });
+    }
+
+    /**
+     * The chain file every lifted build would be read from, the default build's included, whether
+     * or not the file exists.
+     */
+    public Map<GenomeBuild, String> getChainFiles() {
+        Map<GenomeBuild, String> files = new EnumMap<>(GenomeBuild.class);
+        files.putAll(chainFiles);
+        files.put(defaultBuild, defaultChainFile);
+        return files;
+    }
+
+    public GenomeBuild getTargetBuild() {
+        return targetBuild;
+    }
+
+    public GenomeBuild getDefaultBuild() {
+        return defaultBuild;
+    }
+}
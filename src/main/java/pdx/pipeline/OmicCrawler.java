@@ -5,20 +5,38 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
 
 import static pdx.pipeline.OmicHarmonizer.*;
 
+/**
+ * Finds the mutation and CNA files of an UPDOG tree, {@code <root>/data/UPDOG/<provider>/<mut|cna>/<file>},
+ * or of a single provider folder when there is no UPDOG folder. Provider folders are listed on
+ * several threads and every file is handed on as soon as it is found, so lifting can start while
+ * slow (network mounted) folders are still being read.
+ */
 public class OmicCrawler {
 
-    ArrayList<File> providersData;
-    ArrayList<File> variantData = new ArrayList<>();
+    private static final Pattern MUT_FOLDER = Pattern.compile("(?i)MUT");
+    private static final Pattern CNA_FOLDER = Pattern.compile("(?i)CNA");
+    private static final Pattern OMIC_FOLDER = Pattern.compile("(?i)(MUT|CNA)");
+    private static final Pattern OMIC_FILE = Pattern.compile("(?i)^.{0,25}_(mut|cna)(|_.*)\\.(xlsx|tsv|csv)");
 
     private OMIC crawlerSetting = OMIC.DEFAULT;
+    private int parallelism = 4;
 
     Logger log = LoggerFactory.getLogger(OmicCrawler.class);
 
@@ -27,81 +45,98 @@ public class OmicCrawler {
     }
 
     public List<File> searchFileTreeForOmicData(File rootDir) throws IOException {
-        if(folderExists(rootDir)) {
-            String updog = String.format("%s/data/UPDOG", rootDir);
-            File whatUpDog = new File(updog);
-            List<File> providerFolders;
-
-            if (whatUpDog.exists()) {
-                providerFolders = Arrays.asList(whatUpDog.listFiles());
-            } else {
-                System.out.println("No Updog found. Default to provider root folder search mode");
-                providerFolders = new ArrayList<>();
-                providerFolders.add(rootDir);
-            }
-            providersData = returnMutAndCNASubFolders(providerFolders);
-            if (providerFolders.isEmpty()){
-                System.out.printf("No MUT or CNA folds found. Please provide the parent directory"
-                    + "of the MUT or CNA folders if not using Updog mode");
-            }
-            variantData = getVariantdata(providersData);
-        } else throw new IOException("Error root directory could not be found by the OmicCrawler");
-        return variantData;
+        List<File> variantData = Collections.synchronizedList(new ArrayList<>());
+        crawl(rootDir, variantData::add);
+        return new ArrayList<>(variantData);
     }
 
-    private ArrayList<File> returnMutAndCNASubFolders(List<File> rootDir){
-        ArrayList<File> providers = new ArrayList<>();
-        rootDir.forEach(f ->
-                {
-                    if(f.exists() && f.isDirectory()
-                    ) {
-                    providers.addAll
-                            (Arrays.stream(f.listFiles())
-                                    .filter(t -> t.getName().matches(getFileFilter()))
-                                    .collect(Collectors.toCollection(ArrayList::new)));
-                }
-                    }
-        );
-        return providers;
-    }
+    /**
+     * Passes every omic file under {@code rootDir} to {@code onFile} as it is found and returns how
+     * many there were. {@code onFile} is called from the crawler threads and must be thread safe.
+     */
+    public int crawl(File rootDir, Consumer<File> onFile) throws IOException {
+        if (!rootDir.exists()) throw new IOException("Error root directory could not be found by the OmicCrawler");
+        Path updog = rootDir.toPath().resolve("data").resolve("UPDOG");
+        List<Path> providerFolders;
+        if (Files.isDirectory(updog)) {
+            providerFolders = listDirectories(updog, Pattern.compile(".*"));
+        } else {
+            log.info("No Updog found. Default to provider root folder search mode");
+            providerFolders = Collections.singletonList(rootDir.toPath());
+        }
 
-    private String getFileFilter() {
-        String regexFilter = "";
-        switch(crawlerSetting)
-        {
-            case CNA :
-                regexFilter = "(?i)CNA";
-                break;
-            case MUT :
-                regexFilter = "(?i)MUT";
-                break;
-            default:
-                regexFilter = "(?i)(MUT|CNA)";
+        AtomicInteger found = new AtomicInteger();
+        if (parallelism == 1 || providerFolders.size() < 2) {
+            for (Path provider : providerFolders) crawlProvider(provider, onFile, found);
+        } else {
+            crawlInParallel(providerFolders, onFile, found);
+        }
+        if (found.get() == 0) {
+            log.warn("No MUT or CNA files found. Please provide the parent directory "
+                    + "of the MUT or CNA folders if not using Updog mode");
         }
-        return regexFilter;
+        return found.get();
     }
 
-    private ArrayList<File> getVariantdata(ArrayList<File> providersData) {
-        if( ! providersData.isEmpty()) {
-            return returnMutAndCNAFiles(providersData);
+    private void crawlInParallel(List<Path> providerFolders, Consumer<File> onFile, AtomicInteger found) throws IOException {
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(parallelism, providerFolders.size()),
+                r -> new Thread(r, "crawl-" + threadCount.incrementAndGet()));
+        try {
+            List<Future<Void>> providers = new ArrayList<>();
+            for (Path provider : providerFolders) {
+                providers.add(pool.submit(() -> {
+                    crawlProvider(provider, onFile, found);
+                    return null;
+                }));
+            }
+            for (Future<Void> provider : providers) provider.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while crawling " + providerFolders, e);
+        } finally {
+            pool.shutdownNow();
         }
-        else {
-            return new ArrayList<>();
+    }
+
+    private void crawlProvider(Path provider, Consumer<File> onFile, AtomicInteger found) throws IOException {
+        for (Path omicFolder : listDirectories(provider, getFolderFilter())) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(omicFolder,
+                    p -> OMIC_FILE.matcher(p.getFileName().toString()).matches())) {
+                for (Path file : files) {
+                    found.incrementAndGet();
+                    onFile.accept(file.toFile());
+                }
+            } catch (DirectoryIteratorException e) {
+                throw e.getCause();
+            }
         }
     }
 
-    private ArrayList<File> returnMutAndCNAFiles(List<File> providersData) {
-        providersData.forEach(f ->
-            variantData.addAll
-                    (Arrays.stream(f.listFiles())
-                            .filter(t -> t.getName().matches("(?i)^.{0,25}_(mut|cna)(|_.*)\\.(xlsx|tsv|csv)"))
-                            .collect(Collectors.toCollection(ArrayList::new)))
-        );
-        return variantData;
+    private static List<Path> listDirectories(Path parent, Pattern nameFilter) throws IOException {
+        List<Path> directories = new ArrayList<>();
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(parent,
+                p -> nameFilter.matcher(p.getFileName().toString()).matches() && Files.isDirectory(p))) {
+            children.forEach(directories::add);
+        } catch (DirectoryIteratorException e) {
+            throw e.getCause();
+        }
+        return directories;
     }
 
-    private boolean folderExists(File rootDir){
-        return rootDir.exists();
+    private Pattern getFolderFilter() {
+        switch (crawlerSetting) {
+            case CNA:
+                return CNA_FOLDER;
+            case MUT:
+                return MUT_FOLDER;
+            default:
+                return OMIC_FOLDER;
+        }
     }
 
     public OMIC getCrawlerSetting() {
@@ -111,4 +146,16 @@ public class OmicCrawler {
     public void setCrawlerSetting(OMIC crawlerSetting) {
         this.crawlerSetting = crawlerSetting;
     }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets how many provider folders are listed at once.
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) throw new IllegalArgumentException("The crawler needs at least one thread");
+        this.parallelism = parallelism;
+    }
 }
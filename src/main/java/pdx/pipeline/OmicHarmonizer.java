@@ -4,10 +4,16 @@ import me.tongfei.progressbar.ProgressBar;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.*;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
 
 public class OmicHarmonizer {
 
@@ -19,142 +25,814 @@ public class OmicHarmonizer {
 
     private OMIC omicType;
     private ArrayList<ArrayList<String>> omicSheet;
-    private ArrayList<ArrayList<String>> outputSheet;
-    private int chromosomeColumn;
-    private int seqStartPositionCol = -1;
-    private int seqEndPositionCol = -1;
+    private volatile int parallelism = 1;
+    private volatile boolean sweep = false;
+    private volatile ForkJoinPool liftPool;
+    private volatile Semaphore liftSlots;
+    private final LongAdder segmentsResized = new LongAdder();
+    private final LongAdder segmentsOnOppositeStrand = new LongAdder();
 
     private static final String CHROMOSOME = "chromosome";
     private static final String SEQSTARTPOS = "seq_start_position";
     private static final String SEQENDPOS = "seq_end_position";
-    private static final String ERRORSTR = "ERROR LIFTING";
+    private static final String GENOME_ASSEMBLY = "genome_assembly";
+    private static final int PARTITION_SIZE = 2048;
+    private static final int PROGRESS_UPDATE_MILLIS = 100;
 
     private final PDXLiftOver lifter = new PDXLiftOver();
+    private final LifterPool lifters;
 
     Logger log = LoggerFactory.getLogger(OmicHarmonizer.class);
-    Path logFileLocation;
 
     public OmicHarmonizer(String chain) {
         lifter.setChainFileURI(chain);
+        lifters = new LifterPool(lifter, chain);
     }
 
     public ArrayList<ArrayList<String>> runLiftOver(ArrayList<ArrayList<String>> sheet, String fileURI, OMIC dataType) throws IOException {
-        setOmicType(dataType);
+        ArrayList<ArrayList<String>> outputSheet = new ArrayList<>();
         if(sheet.size() > 0) {
-            setClassVariables(sheet, fileURI);
-            initHeaders();
-            buildLiftOverResults(fileURI);
+            SheetLift sheetLift = new SheetLift(fileURI, dataType, sheet.get(0));
+            try {
+                if (sheetLift.headersAreNotMissing()) {
+                    outputSheet.add(sheetLift.getHeaders());
+                    log.info(String.format("Lifting file %s", fileURI));
+                    sheetLift.liftSheet(sheet, outputSheet::add);
+                } else log.error(String.format("Headers not found on file %s", fileURI));
+            } finally {
+                sheetLift.close();
+            }
         } else log.error(String.format("File appears to be empty %s", fileURI));
             return outputSheet;
     }
 
-    private void setClassVariables(ArrayList<ArrayList<String>> sheet, String fileURI){
-        omicSheet = sheet;
-        Path parentPath = Paths.get(fileURI).getParent();
-        logFileLocation = Paths.get(parentPath.toString() + "/lift.log");
-        outputSheet = new ArrayList<>();
+    /**
+     * A builder for a sheet of {@code dataType} that parses the chromosome and coordinate columns
+     * as the rows are read, ready for {@link #runLiftOver(ColumnarSheet, String, OMIC)}.
+     */
+    public ColumnarSheet.Builder newSheetBuilder(OMIC dataType) {
+        ColumnarSheet.Builder builder = new ColumnarSheet.Builder()
+                .mapInts(CHROMOSOME, lifter::contigIdOf)
+                .parseLongs(SEQSTARTPOS)
+                .mapInts(GENOME_ASSEMBLY, GenomeBuild::codeOf);
+        if (dataType == OMIC.CNA) builder.parseLongs(SEQENDPOS);
+        return builder;
     }
 
-    private void initHeaders() {
-        chromosomeColumn = getColumnByHeader(CHROMOSOME);
-        seqStartPositionCol = getColumnByHeader(SEQSTARTPOS);
-        if(omicType.name().equals("CNA")){
-            seqEndPositionCol = getColumnByHeader(SEQENDPOS);
+    /**
+     * Lifts a columnar sheet in place: the rows that lift are selected and their chromosome, start
+     * position and, for CNA, end position are overlaid with the lifted values, nothing is copied.
+     * Returns the number of rows lifted.
+     */
+    public int runLiftOver(ColumnarSheet sheet, String fileURI, OMIC dataType) throws IOException {
+        if (sheet.getRowCount() == 0) {
+            log.error(String.format("File appears to be empty %s", fileURI));
+            return 0;
+        }
+        SheetLift sheetLift = new SheetLift(fileURI, dataType, sheet.getRow(0));
+        try {
+            if (!sheetLift.headersAreNotMissing()) {
+                log.error(String.format("Headers not found on file %s", fileURI));
+                sheet.select(new BitSet());
+                return 0;
+            }
+            log.info(String.format("Lifting file %s", fileURI));
+            return sheetLift.liftColumns(sheet);
+        } finally {
+            sheetLift.close();
         }
     }
 
-    private void buildLiftOverResults(String fileURI){
-        if (headersAreNotMissing()) {
-            outputSheet.add(getHeaders());
-            log.info(String.format("Lifting file %s", fileURI));
-            iterateThruLiftOver();
-        } else log.error(String.format("Headers not found on file %s", fileURI));
+    /**
+     * Opens a lift over a file whose rows are pushed one at a time, header first. Only a small
+     * buffer of rows is held, lifted rows are passed to {@code out} as soon as their batch is done.
+     */
+    public LiftStream openLiftStream(String fileURI, OMIC dataType, RowSink out) {
+        return new LiftStream(fileURI, dataType, out);
     }
 
-    private void iterateThruLiftOver(){
-        ProgressBar pb = new ProgressBar("Lifting", omicSheet.size()).start();
-        int count = 0;
-        for (ArrayList<String> row : omicSheet) {
-            if (omicSheet.indexOf(row) != 0) {
-                liftOver(row);
+    public class LiftStream implements RowSink, Closeable {
+
+        private final String fileURI;
+        private final OMIC dataType;
+        private final RowSink out;
+        private final ArrayList<ArrayList<String>> buffer;
+        private final LiftPartitions partitions;
+        private SheetLift sheetLift;
+        private boolean headersMissing;
+        private long rowsRead;
+        private long rowsLifted;
+
+        private LiftStream(String fileURI, OMIC dataType, RowSink out) {
+            this.fileURI = fileURI;
+            this.dataType = dataType;
+            this.out = out;
+            int bufferSize = PARTITION_SIZE * parallelism;
+            this.buffer = new ArrayList<>(bufferSize);
+            this.partitions = new LiftPartitions(bufferSize);
+        }
+
+        @Override
+        public void accept(ArrayList<String> row) throws IOException {
+            if (rowsRead++ == 0) {
+                sheetLift = new SheetLift(fileURI, dataType, row);
+                headersMissing = !sheetLift.headersAreNotMissing();
+                if (headersMissing) log.error(String.format("Headers not found on file %s", fileURI));
+                else {
+                    log.info(String.format("Lifting file %s", fileURI));
+                    out.accept(sheetLift.getHeaders());
+                }
+            } else if (!headersMissing) {
+                buffer.add(row);
+                if (buffer.size() == partitions.status.length) flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            if (buffer.isEmpty()) return;
+            rowsLifted += sheetLift.liftBuffer(buffer, partitions, (int) (rowsRead - buffer.size()), out);
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (rowsRead == 0) {
+                log.error(String.format("File appears to be empty %s", fileURI));
+                return;
             }
-            if((count % 100) == 0) {
-                pb.stepBy(100);
+            if (sheetLift == null) return;
+            try {
+                flush();
+            } finally {
+                sheetLift.close();
             }
-            count++;
         }
-        pb.stop();
+
+        public long getRowsRead() {
+            return Math.max(rowsRead - 1, 0);
+        }
+
+        public long getRowsLifted() {
+            return rowsLifted;
+        }
     }
 
-   private void liftOver(ArrayList<String> row){
-       List<String> liftedData = lifter.liftOverCoordinates(getRowsGenomicCoordinates(row));
-       if ((liftedData.isEmpty() || liftedData.contains(ERRORSTR) || liftedData.contains("-1"))) {
-           String infoMsg = String.format("LiftOver: Genomic coordinates not lifted for row at index: %s. %n Row data : %s", omicSheet.indexOf(row), Arrays.toString(row.toArray()));
-           logLiftInfo(infoMsg);
-       } else {
-           harmonizeData(liftedData, row);
-       }
-   }
+    /**
+     * Opens a lift over a delimited file whose rows are pushed as raw bytes, header first. A
+     * lifted row is written as the bytes it was read with, only its coordinate cells replaced, so
+     * rows are never decoded unless they are rejected. Rows are buffered in batches as
+     * {@link #openLiftStream} does.
+     */
+    public PatchLift openPatchLift(String fileURI, OMIC dataType, TsvUtils.TsvWriter out) {
+        return new PatchLift(fileURI, dataType, out);
+    }
 
-    private void logLiftInfo(String message){
-        log.info(message);
-        try {
-            if(logFileLocation.toFile().exists()) {
-                Files.write(logFileLocation, Collections.singleton(message), StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+    public class PatchLift implements Closeable {
+
+        private final String fileURI;
+        private final OMIC dataType;
+        private final TsvUtils.TsvWriter out;
+        private final LiftPartitions partitions;
+        // Row i of the batch is bytes[rowStarts[i], rowStarts[i + 1]), tab delimited and ending in a
+        // newline, and its fields end at fieldEnds[firstFields[i]] to fieldEnds[firstFields[i + 1] - 1]
+        private final int[] rowStarts;
+        private final int[] firstFields;
+        private int[] liftedColumns;
+        private int[] fieldEnds = new int[1 << 12];
+        private byte[] bytes = new byte[1 << 16];
+        private int buffered;
+        private byte[][] contigNames = new byte[Contigs.size()][];
+        private byte[] lastChromosome = new byte[0];
+        private int lastContigId = Contigs.UNKNOWN;
+        private byte[] lastAssembly = new byte[0];
+        private int lastBuild = GenomeBuild.UNKNOWN;
+        private SheetLift sheetLift;
+        private boolean headersMissing;
+        private long rowsRead;
+        private long rowsLifted;
+
+        private PatchLift(String fileURI, OMIC dataType, TsvUtils.TsvWriter out) {
+            this.fileURI = fileURI;
+            this.dataType = dataType;
+            this.out = out;
+            int bufferSize = PARTITION_SIZE * parallelism;
+            this.partitions = new LiftPartitions(bufferSize);
+            this.rowStarts = new int[bufferSize + 1];
+            this.firstFields = new int[bufferSize + 1];
+        }
+
+        public void accept(DelimitedReader row) throws IOException {
+            if (rowsRead++ == 0) {
+                sheetLift = new SheetLift(fileURI, dataType, row.toList());
+                headersMissing = !sheetLift.headersAreNotMissing();
+                if (headersMissing) log.error(String.format("Headers not found on file %s", fileURI));
+                else {
+                    log.info(String.format("Lifting file %s", fileURI));
+                    liftedColumns = sheetLift.getLiftedColumns();
+                    out.accept(sheetLift.getHeaders());
+                }
+            } else if (!headersMissing) {
+                bufferRow(row);
+                readCoordinates(row, buffered, (int) rowsRead - 1);
+                buffered++;
+                if (buffered == partitions.status.length) flush();
             }
-            else {
-                Files.write(logFileLocation, Collections.singleton(message), StandardCharsets.UTF_8, StandardOpenOption.CREATE);
+        }
+
+        private void bufferRow(DelimitedReader row) {
+            int width = row.fieldCount();
+            int length = row.fieldByteEnd(width - 1);
+            int start = rowStarts[buffered];
+            int firstField = firstFields[buffered];
+            if (start + length + 1 > bytes.length) bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, start + length + 1));
+            if (firstField + width > fieldEnds.length) fieldEnds = Arrays.copyOf(fieldEnds, Math.max(fieldEnds.length * 2, firstField + width));
+            row.copyRowBytes(bytes, start);
+            for (int c = 0; c < width; c++) {
+                if (c > 0) bytes[start + row.fieldByteStart(c) - 1] = '\t';
+                fieldEnds[firstField + c] = start + row.fieldByteEnd(c);
+            }
+            bytes[start + length] = '\n';
+            rowStarts[buffered + 1] = start + length + 1;
+            firstFields[buffered + 1] = firstField + width;
+        }
+
+        private void readCoordinates(DelimitedReader row, int i, int rowIndex) {
+            partitions.contigIds[i] = Contigs.UNKNOWN;
+            partitions.starts[i] = -1;
+            partitions.ends[i] = -1;
+            partitions.builds[i] = buildOf(i);
+            if (sheetLift.rowIsShort(width(i))) {
+                log.error("Error column size is less then header at index: " + rowIndex);
+                return;
+            }
+            partitions.contigIds[i] = contigIdOf(i);
+            partitions.starts[i] = row.parseLong(sheetLift.seqStartPositionCol);
+            if (dataType == OMIC.CNA) partitions.ends[i] = row.parseLong(sheetLift.seqEndPositionCol);
+            else if (dataType == OMIC.MUT) partitions.ends[i] = partitions.starts[i];
+            if (fieldStart(i, sheetLift.chromosomeColumn) == fieldEnd(i, sheetLift.chromosomeColumn))
+                log.info("No Chromosome information found for index " + rowIndex);
+            if (partitions.starts[i] == -1 || partitions.ends[i] == -1) log.info("Start or end pos missing in " + rowIndex);
+        }
+
+        /**
+         * Rows are usually grouped by chromosome, so the spelling of the previous row is kept and
+         * only a new spelling is decoded.
+         */
+        private int contigIdOf(int i) {
+            int start = fieldStart(i, sheetLift.chromosomeColumn);
+            int end = fieldEnd(i, sheetLift.chromosomeColumn);
+            if (!Arrays.equals(lastChromosome, 0, lastChromosome.length, bytes, start, end)) {
+                lastChromosome = Arrays.copyOfRange(bytes, start, end);
+                lastContigId = lifter.contigIdOf(new String(lastChromosome, StandardCharsets.UTF_8));
+            }
+            return lastContigId;
+        }
+
+        private int buildOf(int i) {
+            int column = sheetLift.assemblyColumn;
+            if (column < 0 || column >= width(i)) return GenomeBuild.UNKNOWN;
+            int start = fieldStart(i, column);
+            int end = fieldEnd(i, column);
+            if (!Arrays.equals(lastAssembly, 0, lastAssembly.length, bytes, start, end)) {
+                lastAssembly = Arrays.copyOfRange(bytes, start, end);
+                lastBuild = GenomeBuild.codeOf(new String(lastAssembly, StandardCharsets.UTF_8));
+            }
+            return lastBuild;
+        }
+
+        private void flush() throws IOException {
+            if (buffered == 0) return;
+            int indexOffset = (int) (rowsRead - buffered);
+            inLiftSlot(() -> {
+                if (parallelism > 1 && buffered > PARTITION_SIZE) {
+                    getLiftPool().invoke(new RangeLift((from, to) -> sheetLift.lift(partitions, from, to), null, 0, buffered));
+                } else {
+                    sheetLift.lift(partitions, 0, buffered);
+                }
+            });
+            for (int i = 0; i < buffered; i++) {
+                if (partitions.status[i] == PDXLiftOver.LIFTED) {
+                    sheetLift.checkInterval(partitions, i);
+                    writePatched(i);
+                    rowsLifted++;
+                } else {
+                    LiftLog.Reason reason = sheetLift.rejectReason(width(i), partitions.status[i]);
+                    sheetLift.rejected[reason.ordinal()]++;
+                    sheetLift.liftLog.reject(reason, indexOffset + i, decodeRow(i));
+                }
+            }
+            buffered = 0;
+        }
+
+        private void writePatched(int i) throws IOException {
+            int from = rowStarts[i];
+            for (int column : liftedColumns) {
+                out.write(bytes, from, fieldStart(i, column) - from);
+                writeLiftedCell(i, column);
+                from = fieldEnd(i, column);
+            }
+            out.write(bytes, from, rowStarts[i + 1] - from);
+        }
+
+        private void writeLiftedCell(int i, int column) throws IOException {
+            if (column == sheetLift.seqStartPositionCol) {
+                out.write(partitions.liftedStarts[i]);
+                return;
+            }
+            if (column == sheetLift.seqEndPositionCol) {
+                out.write(partitions.liftedEnds[i]);
+                return;
             }
-        } catch (IOException e) {
-            log.info(String.format("IOError writing to log file %s", logFileLocation));
-            e.printStackTrace();
+            int contigId = partitions.liftedContigIds[i];
+            if (contigId >= contigNames.length) contigNames = Arrays.copyOf(contigNames, Math.max(contigId + 1, contigNames.length * 2));
+            byte[] name = contigNames[contigId];
+            if (name == null) {
+                name = Contigs.vcfName(contigId).getBytes(StandardCharsets.UTF_8);
+                contigNames[contigId] = name;
+            }
+            out.write(name, 0, name.length);
+        }
+
+        private ArrayList<String> decodeRow(int i) {
+            ArrayList<String> row = new ArrayList<>(width(i));
+            for (int c = 0; c < width(i); c++) {
+                row.add(new String(bytes, fieldStart(i, c), fieldEnd(i, c) - fieldStart(i, c), StandardCharsets.UTF_8));
+            }
+            return row;
+        }
+
+        private int width(int i) {
+            return firstFields[i + 1] - firstFields[i];
+        }
+
+        private int fieldStart(int i, int column) {
+            return column == 0 ? rowStarts[i] : fieldEnds[firstFields[i] + column - 1] + 1;
+        }
+
+        private int fieldEnd(int i, int column) {
+            return fieldEnds[firstFields[i] + column];
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (rowsRead == 0) {
+                log.error(String.format("File appears to be empty %s", fileURI));
+                return;
+            }
+            if (sheetLift == null) return;
+            try {
+                flush();
+            } finally {
+                sheetLift.close();
+            }
+        }
+
+        public long getRowsRead() {
+            return Math.max(rowsRead - 1, 0);
+        }
+
+        public long getRowsLifted() {
+            return rowsLifted;
         }
     }
 
-    private void harmonizeData(List<String> liftedData, ArrayList<String> row){
-        ArrayList<String> rowOut = new ArrayList<>(row);
-        mergeLiftDataWithRowData(liftedData, rowOut);
-        outputSheet.add(rowOut);
+    /**
+     * Column layout and log location for lifting a single file. Every lift gets its own instance
+     * so a harmonizer can be shared between threads.
+     */
+    private class SheetLift {
+
+        private final OMIC omicType;
+        private final ArrayList<String> headers;
+        private final String fileURI;
+        private final LiftLog liftLog;
+        private final long[] rejected = new long[LiftLog.Reason.values().length];
+        private long resized;
+        private long oppositeStrand;
+        private final LongAdder passedThrough = new LongAdder();
+        private final int chromosomeColumn;
+        private final int seqStartPositionCol;
+        private final int seqEndPositionCol;
+        private final int assemblyColumn;
+
+        SheetLift(String fileURI, OMIC omicType, ArrayList<String> headers) {
+            this.omicType = omicType;
+            this.headers = headers;
+            this.fileURI = fileURI;
+            this.liftLog = LiftLog.acquire(Paths.get(fileURI).getParent());
+            chromosomeColumn = getColumnByHeader(headers, CHROMOSOME);
+            seqStartPositionCol = getColumnByHeader(headers, SEQSTARTPOS);
+            seqEndPositionCol = omicType.name().equals("CNA") ? getColumnByHeader(headers, SEQENDPOS) : -1;
+            assemblyColumn = getColumnByHeader(headers, GENOME_ASSEMBLY);
+        }
+
+        private void liftSheet(ArrayList<ArrayList<String>> omicSheet, RowSink out) throws IOException {
+            ProgressBar pb = new ProgressBar("Lifting", omicSheet.size(), PROGRESS_UPDATE_MILLIS).start();
+            LiftPartitions partitions = new LiftPartitions(omicSheet.size());
+            liftAll((from, to) -> liftRange(omicSheet, partitions, from, to), omicSheet.size(), pb);
+            emitLiftedRows(omicSheet, partitions, 1, omicSheet.size(), 0, out);
+            pb.stop();
+        }
+
+        private void liftAll(RangeAction action, int rows, ProgressBar pb) throws InterruptedIOException {
+            inLiftSlot(() -> {
+                if (parallelism > 1) {
+                    getLiftPool().invoke(new RangeLift(action, pb, 1, rows));
+                } else {
+                    for (int from = 1; from < rows; from += PARTITION_SIZE) {
+                        int to = Math.min(from + PARTITION_SIZE, rows);
+                        action.lift(from, to);
+                        pb.stepBy(to - from);
+                    }
+                }
+            });
+        }
+
+        private int liftColumns(ColumnarSheet sheet) throws IOException {
+            int rows = sheet.getRowCount();
+            long[] starts = sheet.getLongColumn(seqStartPositionCol);
+            long[] ends;
+            if (omicType == OMIC.CNA) ends = sheet.getLongColumn(seqEndPositionCol);
+            else if (omicType == OMIC.MUT) ends = starts;
+            else {
+                ends = new long[rows];
+                Arrays.fill(ends, -1);
+            }
+            checkNumbers(sheet, starts, seqStartPositionCol);
+            if (omicType == OMIC.CNA) checkNumbers(sheet, ends, seqEndPositionCol);
+            int[] builds = assemblyColumn >= 0 ? sheet.getIntColumn(assemblyColumn) : null;
+            LiftPartitions partitions = new LiftPartitions(sheet.getIntColumn(chromosomeColumn), starts, ends, builds);
+            ProgressBar pb = new ProgressBar("Lifting", rows, PROGRESS_UPDATE_MILLIS).start();
+            liftAll((from, to) -> liftColumnRange(sheet, partitions, from, to), rows, pb);
+            pb.stop();
+
+            BitSet lifted = new BitSet(rows);
+            String[] chromosomes = new String[rows];
+            for (int i = 1; i < rows; i++) {
+                if (partitions.status[i] == PDXLiftOver.LIFTED) {
+                    lifted.set(i);
+                    chromosomes[i] = Contigs.vcfName(partitions.liftedContigIds[i]);
+                    checkInterval(partitions, i);
+                } else {
+                    LiftLog.Reason reason = rejectReason(sheet.getWidth(i), partitions.status[i]);
+                    rejected[reason.ordinal()]++;
+                    liftLog.reject(reason, i, sheet.getRow(i));
+                }
+            }
+            sheet.select(lifted);
+            sheet.overlay(chromosomeColumn, chromosomes);
+            sheet.overlay(seqStartPositionCol, partitions.liftedStarts);
+            if (omicType == OMIC.CNA) sheet.overlay(seqEndPositionCol, partitions.liftedEnds);
+            return lifted.cardinality();
+        }
+
+        /**
+         * Fails the sheet before any row is lifted if a coordinate cell of a row that is not short
+         * is not a number, as parsing the cell fails the list form of the sheet.
+         */
+        private void checkNumbers(ColumnarSheet sheet, long[] values, int column) {
+            for (int i = 1; i < sheet.getRowCount(); i++) {
+                if (values[i] == ColumnarSheet.NOT_A_NUMBER && !rowIsShort(sheet.getWidth(i))) {
+                    throw new NumberFormatException(String.format("For input string: \"%s\" in column %s at row %d of %s",
+                            sheet.getString(i, column), headers.get(column), i, fileURI));
+                }
+            }
+        }
+
+        private void liftColumnRange(ColumnarSheet sheet, LiftPartitions partitions, int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (rowIsShort(sheet.getWidth(i))) {
+                    log.error("Error column size is less then header at index: " + i);
+                    continue;
+                }
+                if (sheet.getCellLength(i, chromosomeColumn) == 0) log.info("No Chromosome information found for index " + i);
+                if (partitions.starts[i] == -1 || partitions.ends[i] == -1) log.info("Start or end pos missing in " + i);
+            }
+            lift(partitions, from, to);
+            for (int i = from; i < to; i++) {
+                if (rowIsShort(sheet.getWidth(i))) partitions.status[i] = PDXLiftOver.INVALID;
+            }
+        }
+
+        private long liftBuffer(ArrayList<ArrayList<String>> buffer, LiftPartitions partitions, int indexOffset, RowSink out) throws IOException {
+            inLiftSlot(() -> {
+                if (parallelism > 1 && buffer.size() > PARTITION_SIZE) {
+                    getLiftPool().invoke(new RangeLift((from, to) -> liftRange(buffer, partitions, from, to), null, 0, buffer.size()));
+                } else {
+                    liftRange(buffer, partitions, 0, buffer.size());
+                }
+            });
+            return emitLiftedRows(buffer, partitions, 0, buffer.size(), indexOffset, out);
+        }
+
+        private long emitLiftedRows(List<ArrayList<String>> rows, LiftPartitions partitions, int from, int to, int indexOffset, RowSink out) throws IOException {
+            long lifted = 0;
+            for (int i = from; i < to; i++) {
+                if (partitions.status[i] == PDXLiftOver.LIFTED) {
+                    checkInterval(partitions, i);
+                    out.accept(partitions.liftedRows[i]);
+                    partitions.liftedRows[i] = null;
+                    lifted++;
+                } else {
+                    LiftLog.Reason reason = rejectReason(rows.get(i), partitions.status[i]);
+                    rejected[reason.ordinal()]++;
+                    liftLog.reject(reason, indexOffset + i, rows.get(i));
+                }
+            }
+            return lifted;
+        }
+
+        private void liftRange(List<ArrayList<String>> rows, LiftPartitions partitions, int from, int to){
+            for (int i = from; i < to; i++) {
+                readRowsGenomicCoordinates(rows.get(i), i, partitions);
+            }
+            lift(partitions, from, to);
+            for (int i = from; i < to; i++) {
+                if (partitions.status[i] == PDXLiftOver.LIFTED) {
+                    harmonizeData(rows.get(i), partitions, i);
+                }
+            }
+        }
+
+        /**
+         * Lifts each run of rows declaring the same build with that build's lifter. Rows on the
+         * target build are passed through and rows without a known build are lifted as the default
+         * build, as every row was before builds were read.
+         */
+        private void lift(LiftPartitions partitions, int from, int to) {
+            if (partitions.builds == null) {
+                lift(lifter, partitions, from, to);
+                return;
+            }
+            int runStart = from;
+            while (runStart < to) {
+                GenomeBuild build = buildOf(partitions, runStart);
+                int runEnd = runStart + 1;
+                while (runEnd < to && buildOf(partitions, runEnd) == build) runEnd++;
+                liftRun(build, partitions, runStart, runEnd);
+                runStart = runEnd;
+            }
+        }
+
+        private GenomeBuild buildOf(LiftPartitions partitions, int i) {
+            GenomeBuild build = GenomeBuild.fromCode(partitions.builds[i]);
+            return build == null ? lifters.getDefaultBuild() : build;
+        }
+
+        private void liftRun(GenomeBuild build, LiftPartitions partitions, int from, int to) {
+            if (lifters.isPassThrough(build)) {
+                PDXLiftOver.passThrough(partitions.contigIds, partitions.starts, partitions.ends, from, to, partitions.liftedContigIds,
+                        partitions.liftedStarts, partitions.liftedEnds, partitions.negativeStrands, partitions.status);
+                passedThrough.add(to - from);
+                return;
+            }
+            PDXLiftOver runLifter = lifters.lifterFor(build);
+            if (runLifter == null) {
+                PDXLiftOver.noChain(partitions.contigIds, partitions.starts, partitions.ends, from, to, partitions.liftedContigIds,
+                        partitions.liftedStarts, partitions.liftedEnds, partitions.negativeStrands, partitions.status);
+                return;
+            }
+            lift(runLifter, partitions, from, to);
+        }
+
+        private void lift(PDXLiftOver chainLifter, LiftPartitions partitions, int from, int to) {
+            if (sweep) {
+                chainLifter.liftOverSweep(partitions.contigIds, partitions.starts, partitions.ends, from, to, partitions.liftedContigIds,
+                        partitions.liftedStarts, partitions.liftedEnds, partitions.negativeStrands, partitions.status);
+            } else {
+                chainLifter.liftOverBatch(partitions.contigIds, partitions.starts, partitions.ends, from, to, partitions.liftedContigIds,
+                        partitions.liftedStarts, partitions.liftedEnds, partitions.negativeStrands, partitions.status);
+            }
+        }
+
+        /**
+         * Counts a lifted CNA segment whose length changed or that now lies on the opposite strand.
+         */
+        private void checkInterval(LiftPartitions partitions, int i) {
+            if (omicType != OMIC.CNA) return;
+            if (partitions.liftedEnds[i] - partitions.liftedStarts[i] != partitions.ends[i] - partitions.starts[i]) resized++;
+            if (partitions.negativeStrands[i]) oppositeStrand++;
+        }
+
+        private void readRowsGenomicCoordinates(ArrayList<String> row, int rowIndex, LiftPartitions partitions){
+            partitions.contigIds[rowIndex] = Contigs.UNKNOWN;
+            partitions.starts[rowIndex] = -1;
+            partitions.ends[rowIndex] = -1;
+            partitions.builds[rowIndex] = assemblyColumn >= 0 && assemblyColumn < row.size()
+                    ? GenomeBuild.codeOf(row.get(assemblyColumn)) : GenomeBuild.UNKNOWN;
+            if(!rowIsShort(row)) {
+                String rowChromosome = row.get(chromosomeColumn);
+                partitions.contigIds[rowIndex] = lifter.contigIdOf(rowChromosome);
+                partitions.starts[rowIndex] = getAndValidateSeqCoordinatesNum(row, seqStartPositionCol);
+                partitions.ends[rowIndex] = getSeqEndPosition(row);
+                if(rowChromosome.equals("")) log.info("No Chromosome information found for index " + rowIndex);
+                if(partitions.starts[rowIndex] == -1 || partitions.ends[rowIndex] == -1) log.info("Start or end pos missing in " + rowIndex);
+            } else log.error("Error column size is less then header at index: " + rowIndex);
+        }
+
+        private LiftLog.Reason rejectReason(ArrayList<String> row, byte status){
+            return rejectReason(row.size(), status);
+        }
+
+        private LiftLog.Reason rejectReason(int rowWidth, byte status){
+            if (status == PDXLiftOver.UNMAPPED) return LiftLog.Reason.UNMAPPED;
+            return rowIsShort(rowWidth) ? LiftLog.Reason.SHORT_ROW : LiftLog.Reason.MISSING_COORDINATES;
+        }
+
+        private boolean rowIsShort(ArrayList<String> row){
+            return rowIsShort(row.size());
+        }
+
+        private boolean rowIsShort(int rowWidth){
+            return !(rowWidth > chromosomeColumn && rowWidth > seqStartPositionCol && rowWidth > seqEndPositionCol);
+        }
+
+        private void close(){
+            liftLog.release();
+            long total = 0;
+            for (long count : rejected) total += count;
+            if (total > 0) {
+                log.info(String.format("%d rows not lifted for %s: %d short rows, %d missing coordinates, %d unmapped",
+                        total, fileURI, rejected[LiftLog.Reason.SHORT_ROW.ordinal()],
+                        rejected[LiftLog.Reason.MISSING_COORDINATES.ordinal()], rejected[LiftLog.Reason.UNMAPPED.ordinal()]));
+            }
+            if (resized > 0 || oppositeStrand > 0) {
+                log.info(String.format("%d segments of %s lifted with a changed length, %d to the opposite strand",
+                        resized, fileURI, oppositeStrand));
+                segmentsResized.add(resized);
+                segmentsOnOppositeStrand.add(oppositeStrand);
+            }
+            if (passedThrough.sum() > 0) {
+                log.info(String.format("%d rows of %s already on %s passed through", passedThrough.sum(), fileURI,
+                        lifters.getTargetBuild().getName()));
+            }
+        }
+
+        private void harmonizeData(ArrayList<String> row, LiftPartitions partitions, int rowIndex){
+            ArrayList<String> rowOut = new ArrayList<>(row);
+            mergeLiftDataWithRowData(partitions, rowIndex, rowOut);
+            partitions.liftedRows[rowIndex] = rowOut;
+        }
+
+        private long getAndValidateSeqCoordinatesNum(ArrayList<String> row, int colNum){
+            return Long.parseLong(validateNumStr(row.get(colNum)));
+        }
+
+        private String validateNumStr(String num){
+            return num.trim().equals("") ? "-1" : num;
+        }
+
+        private long getSeqEndPosition(ArrayList<String> row) {
+            long endPos = -1;
+            if(omicType.equals(OMIC.CNA)) endPos = getAndValidateSeqCoordinatesNum(row, seqEndPositionCol);
+            else if(omicType.equals(OMIC.MUT)) endPos = getAndValidateSeqCoordinatesNum(row, seqStartPositionCol);
+            return endPos;
+        }
+
+        private void mergeLiftDataWithRowData(LiftPartitions partitions, int rowIndex, ArrayList<String> row) {
+            row.set(chromosomeColumn, Contigs.vcfName(partitions.liftedContigIds[rowIndex]));
+            row.set(seqStartPositionCol, String.valueOf(partitions.liftedStarts[rowIndex]));
+            if (omicType == OMIC.CNA) row.set(seqEndPositionCol, String.valueOf(partitions.liftedEnds[rowIndex]));
+        }
+
+        /**
+         * The columns a lift rewrites, in the order they appear in a row.
+         */
+        private int[] getLiftedColumns() {
+            int[] columns = omicType == OMIC.CNA
+                    ? new int[]{chromosomeColumn, seqStartPositionCol, seqEndPositionCol}
+                    : new int[]{chromosomeColumn, seqStartPositionCol};
+            Arrays.sort(columns);
+            return columns;
+        }
+
+        private ArrayList<String> getHeaders(){
+            return headers;
+        }
+
+        private boolean headersAreNotMissing(){
+            return (chromosomeColumn != -1 && seqStartPositionCol != -1);
+        }
     }
 
-    private Map<String, long[]> getRowsGenomicCoordinates(ArrayList<String> row){
-        String rowChromosome = "";
-        long rowStartPos = -1;
-        long endPos = -1;
-        if(row.size() > chromosomeColumn && row.size() > seqStartPositionCol && row.size() > seqEndPositionCol) {
-                rowChromosome = row.get(chromosomeColumn);
-                rowStartPos = getAndValidateSeqCoordinatesNum(row, seqStartPositionCol);
-                endPos = getSeqEndPosition(row);
-                if(rowChromosome.equals("")) log.info("No Chromosome information found for index " + omicSheet.indexOf(row));
-                if(rowStartPos == -1 || endPos == -1) log.info("Start or end pos missing in " + omicSheet.indexOf(row));
-        } else log.error("Error column size is less then header at index: " + omicSheet.indexOf(row));
-        Map<String, long[]> genomCoors = new LinkedHashMap<>();
-        genomCoors.put(rowChromosome, new long[]{rowStartPos, endPos});
-        return genomCoors;
+    /**
+     * Parallel arrays holding the coordinates and lift results of every row of a sheet.
+     * Partitions write to disjoint index ranges so no synchronisation is needed. A columnar
+     * sheet's own coordinate columns are used as the input arrays.
+     */
+    private static class LiftPartitions {
+
+        final int[] contigIds;
+        final long[] starts;
+        final long[] ends;
+        final int[] builds;
+        final int[] liftedContigIds;
+        final long[] liftedStarts;
+        final long[] liftedEnds;
+        final boolean[] negativeStrands;
+        final byte[] status;
+        final ArrayList<String>[] liftedRows;
+
+        @SuppressWarnings("unchecked")
+        LiftPartitions(int rows) {
+            contigIds = new int[rows];
+            starts = new long[rows];
+            ends = new long[rows];
+            builds = new int[rows];
+            liftedContigIds = new int[rows];
+            liftedStarts = new long[rows];
+            liftedEnds = new long[rows];
+            negativeStrands = new boolean[rows];
+            status = new byte[rows];
+            liftedRows = new ArrayList[rows];
+        }
+
+        LiftPartitions(int[] contigIds, long[] starts, long[] ends, int[] builds) {
+            int rows = contigIds.length;
+            this.contigIds = contigIds;
+            this.starts = starts;
+            this.ends = ends;
+            this.builds = builds;
+            liftedContigIds = new int[rows];
+            liftedStarts = new long[rows];
+            liftedEnds = new long[rows];
+            negativeStrands = new boolean[rows];
+            status = new byte[rows];
+            liftedRows = null;
+        }
     }
 
-    private long getAndValidateSeqCoordinatesNum(ArrayList<String> row, int colNum){
-        return Long.parseLong(validateNumStr(row.get(colNum)));
+    private interface RangeAction {
+        void lift(int from, int to);
     }
 
-    private String validateNumStr(String num){
-        return num.trim().equals("") ? "-1" : num;
+    private static class RangeLift extends RecursiveAction {
+
+        private final RangeAction action;
+        private final ProgressBar pb;
+        private final int from;
+        private final int to;
+
+        RangeLift(RangeAction action, ProgressBar pb, int from, int to) {
+            this.action = action;
+            this.pb = pb;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARTITION_SIZE) {
+                action.lift(from, to);
+                if (pb != null) pb.stepBy(to - from);
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new RangeLift(action, pb, from, mid), new RangeLift(action, pb, mid, to));
+            }
+        }
     }
 
-    private long getSeqEndPosition(ArrayList<String> row) {
-        long endPos = -1;
-        if(omicType.equals(OMIC.CNA)) endPos = getAndValidateSeqCoordinatesNum(row, seqEndPositionCol);
-        else if(omicType.equals(OMIC.MUT)) endPos = getAndValidateSeqCoordinatesNum(row, seqStartPositionCol);
-        return endPos;
+    /**
+     * Runs {@code lift} once one of the lift slots is free, if they are limited.
+     */
+    private void inLiftSlot(Runnable lift) throws InterruptedIOException {
+        Semaphore slots = liftSlots;
+        if (slots == null) {
+            lift.run();
+            return;
+        }
+        try {
+            slots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a lift slot");
+        }
+        try {
+            lift.run();
+        } finally {
+            slots.release();
+        }
     }
 
-    private void mergeLiftDataWithRowData(List<String> liftedData, ArrayList<String>row) {
-        row.set(chromosomeColumn, liftedData.get(0));
-        row.set(seqStartPositionCol, liftedData.get(1));
+    private ForkJoinPool getLiftPool() {
+        ForkJoinPool pool = liftPool;
+        if (pool == null) {
+            synchronized (this) {
+                pool = liftPool;
+                if (pool == null) {
+                    pool = new ForkJoinPool(parallelism);
+                    liftPool = pool;
+                }
+            }
+        }
+        return pool;
     }
 
     public int getColumnByHeader(String header) {
-        ArrayList<String> headers = getHeaders();
+        return getColumnByHeader(getHeaders(), header);
+    }
+
+    private static int getColumnByHeader(ArrayList<String> headers, String header) {
         Iterator<String> iterator = headers.iterator();
         int errorFlag = -1;
         boolean foundMatch;
@@ -173,10 +851,6 @@ public class OmicHarmonizer {
         return omicSheet.get(0);
     }
 
-    protected boolean headersAreNotMissing(){
-        return (chromosomeColumn != -1 && seqStartPositionCol != -1);
-    }
-
     public void setOmicSheet(ArrayList<ArrayList<String>> omicSheet) {
         this.omicSheet = omicSheet;
     }
@@ -189,4 +863,82 @@ public class OmicHarmonizer {
         return omicType;
     }
 
+    /**
+     * Number of threads used to lift the rows of a single sheet. 1 lifts on the calling thread.
+     */
+    public synchronized void setParallelism(int parallelism) {
+        if (parallelism < 1) throw new IllegalArgumentException("Parallelism must be at least 1");
+        this.parallelism = parallelism;
+        if (liftPool != null) {
+            liftPool.shutdown();
+            liftPool = null;
+        }
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Limits how many sheets, or batches of streamed or patched rows, are lifted at once across
+     * every file this harmonizer lifts. Reading and writing rows never take a slot, so files read
+     * and written on their own threads share the slots only while lifting. Pass null to lift
+     * without a limit.
+     */
+    public void setLiftSlots(Semaphore liftSlots) {
+        this.liftSlots = liftSlots;
+    }
+
+    public Semaphore getLiftSlots() {
+        return liftSlots;
+    }
+
+    /**
+     * Caches lift results across every sheet this harmonizer lifts. Pass null to lift without a cache.
+     */
+    public void setLiftCache(LiftOverCache liftCache) {
+        lifter.setLiftCache(liftCache);
+    }
+
+    public LiftOverCache getLiftCache() {
+        return lifter.getLiftCache();
+    }
+
+    public ChainIndex getChainIndex() {
+        return lifter.getChainIndex();
+    }
+
+    /**
+     * The lifters rows are routed to by the build in their genome_assembly column.
+     */
+    public LifterPool getLifterPool() {
+        return lifters;
+    }
+
+    /**
+     * Number of CNA segments lifted so far whose length changed.
+     */
+    public long getSegmentsResized() {
+        return segmentsResized.sum();
+    }
+
+    /**
+     * Number of CNA segments lifted so far that map to the opposite strand.
+     */
+    public long getSegmentsOnOppositeStrand() {
+        return segmentsOnOppositeStrand.sum();
+    }
+
+    /**
+     * Lifts each partition of rows in coordinate order with a single forward pass over the chain
+     * blocks, see {@link PDXLiftOver#liftOverSweep}. Output keeps the original row order.
+     */
+    public void setSweep(boolean sweep) {
+        this.sweep = sweep;
+    }
+
+    public boolean isSweep() {
+        return sweep;
+    }
+
 }
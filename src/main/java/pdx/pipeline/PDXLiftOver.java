@@ -1,8 +1,5 @@
 package pdx.pipeline;
 
-import htsjdk.samtools.liftover.LiftOver;
-import htsjdk.samtools.util.Interval;
-
 import java.io.File;
 import java.util.*;
 
@@ -10,98 +7,245 @@ public class PDXLiftOver {
 
     private static final String ERRORSTR = "ERROR LIFTING";
     private String chainFileURI;
+    private volatile ChainIndex chainIndex;
+    private volatile LiftOverCache liftCache;
+
+    public static final byte LIFTED = 0;
+    public static final byte UNMAPPED = 1;
+    public static final byte INVALID = 2;
 
     public List<String> liftOverCoordinates(Map<String, long[]> genomeCoord) {
         return executeLiftOver(genomeCoord);
     }
 
-    private List<String> executeLiftOver(Map<String,long[]> genomeCoord) {
-        LiftOver liftOver = new LiftOver(getChainFile());
-        List<String> allIntervals = new ArrayList<>();
-        genomeCoord.entrySet().forEach(entry  -> {
-          Interval inputInterval = entryToInterval(entry);
-            Interval outputInterval;
-            try {
-                outputInterval = liftOver.liftOver(inputInterval);
-            } catch(IllegalArgumentException e){
-                outputInterval = null;
-            }
-            if(outputInterval == null) {
-                allIntervals.add(ERRORSTR);
-            }
-            else {
-                allIntervals.addAll(intervalToList(outputInterval));
+    /**
+     * Lifts rows {@code from} (inclusive) to {@code to} (exclusive) of a sheet held as parallel
+     * arrays. Results are written to the same positions of the output arrays and {@code status}
+     * holds {@link #LIFTED}, {@link #UNMAPPED} or {@link #INVALID} for every row.
+     */
+    public void liftOverBatch(int[] contigIds, long[] starts, long[] ends, int from, int to,
+                              int[] liftedContigIds, long[] liftedStarts, long[] liftedEnds, byte[] status) {
+        liftOverBatch(contigIds, starts, ends, from, to, liftedContigIds, liftedStarts, liftedEnds, null, status);
+    }
+
+    /**
+     * Same as {@link #liftOverBatch(int[], long[], long[], int, int, int[], long[], long[], byte[])}
+     * and also sets {@code negativeStrands[i]} when row {@code i} lifts to the opposite strand.
+     * {@code negativeStrands} may be null.
+     */
+    public void liftOverBatch(int[] contigIds, long[] starts, long[] ends, int from, int to, int[] liftedContigIds,
+                              long[] liftedStarts, long[] liftedEnds, boolean[] negativeStrands, byte[] status) {
+        ChainIndex index = getChainIndex();
+        int[] lifted = new int[ChainIndex.RESULT_SIZE];
+        for (int i = from; i < to; i++) {
+            if (!liftRow(index, contigIds[i], starts[i], ends[i], lifted)) {
+                status[i] = isValid(contigIds[i], starts[i], ends[i]) ? UNMAPPED : INVALID;
+                liftedContigIds[i] = Contigs.UNKNOWN;
+                liftedStarts[i] = -1;
+                liftedEnds[i] = -1;
+                if (negativeStrands != null) negativeStrands[i] = false;
+            } else {
+                status[i] = LIFTED;
+                liftedContigIds[i] = lifted[ChainIndex.CONTIG];
+                liftedStarts[i] = lifted[ChainIndex.START];
+                liftedEnds[i] = lifted[ChainIndex.END];
+                if (negativeStrands != null) negativeStrands[i] = lifted[ChainIndex.NEGATIVE_STRAND] == 1;
             }
-        });
-        return allIntervals;
+        }
     }
-    private List<String> intervalToList(Interval interval){
-        List<String> list = new LinkedList<>();
-        String vcfFormatChromo = harmonizeChromoToVCF(interval.getSequence());
-        list.add(vcfFormatChromo);
-        list.add(String.valueOf(interval.getStart()));
-        list.add(String.valueOf(interval.getEnd()));
-        return list;
+
+    /**
+     * Same as {@link #liftOverBatch(int[], long[], long[], int, int, int[], long[], long[], byte[])}
+     * but visits the rows in contig and start order with a {@link ChainIndex.Sweep}. Rows already
+     * in that order are not sorted. Results are still written to each row's own position, so the
+     * caller sees them in the original order.
+     */
+    public void liftOverSweep(int[] contigIds, long[] starts, long[] ends, int from, int to,
+                              int[] liftedContigIds, long[] liftedStarts, long[] liftedEnds, byte[] status) {
+        liftOverSweep(contigIds, starts, ends, from, to, liftedContigIds, liftedStarts, liftedEnds, null, status);
     }
 
-    private Interval entryToInterval(Map.Entry<String,long[]> entry) {
-        String harmonizedChromo = harmonizeChromoToChain(entry.getKey());
-        return new Interval(harmonizedChromo, (int) entry.getValue()[0], (int) entry.getValue()[1]);
+    /**
+     * Same as {@link #liftOverSweep(int[], long[], long[], int, int, int[], long[], long[], byte[])}
+     * and also sets {@code negativeStrands[i]} when row {@code i} lifts to the opposite strand.
+     */
+    public void liftOverSweep(int[] contigIds, long[] starts, long[] ends, int from, int to, int[] liftedContigIds,
+                              long[] liftedStarts, long[] liftedEnds, boolean[] negativeStrands, byte[] status) {
+        ChainIndex.Sweep sweep = getChainIndex().newSweep();
+        int[] lifted = new int[ChainIndex.RESULT_SIZE];
+        int[] order = sweepOrder(contigIds, starts, from, to);
+        for (int k = 0; k < to - from; k++) {
+            int i = order == null ? from + k : order[k];
+            boolean valid = isValid(contigIds[i], starts[i], ends[i]);
+            if (!valid || !sweep.liftOver(contigIds[i], (int) starts[i], (int) ends[i], lifted)) {
+                status[i] = valid ? UNMAPPED : INVALID;
+                liftedContigIds[i] = Contigs.UNKNOWN;
+                liftedStarts[i] = -1;
+                liftedEnds[i] = -1;
+                if (negativeStrands != null) negativeStrands[i] = false;
+            } else {
+                status[i] = LIFTED;
+                liftedContigIds[i] = lifted[ChainIndex.CONTIG];
+                liftedStarts[i] = lifted[ChainIndex.START];
+                liftedEnds[i] = lifted[ChainIndex.END];
+                if (negativeStrands != null) negativeStrands[i] = lifted[ChainIndex.NEGATIVE_STRAND] == 1;
+            }
+        }
     }
 
-    private String harmonizeChromoToVCF(String chromo){
-        return chromo.toUpperCase().replaceAll("(?i)chr", "");
+    /**
+     * Row indexes of {@code from..to} ordered by contig and start, or null if the rows are already
+     * in that order. Each row is packed into one long as contig, start and offset so a primitive
+     * sort does the work; invalid rows sort to the end.
+     */
+    private static int[] sweepOrder(int[] contigIds, long[] starts, int from, int to) {
+        if (isSorted(contigIds, starts, from, to)) return null;
+        int offsetBits = 32 - Integer.numberOfLeadingZeros(to - from);
+        long unknownContig = (1L << (32 - offsetBits)) - 1;
+        if (Contigs.size() >= unknownContig) return null;
+        long[] keys = new long[to - from];
+        for (int i = from; i < to; i++) {
+            long contig = contigIds[i] == Contigs.UNKNOWN ? unknownContig : contigIds[i];
+            long start = Math.max(0, Math.min(starts[i], Integer.MAX_VALUE));
+            keys[i - from] = (contig << (31 + offsetBits)) | (start << offsetBits) | (i - from);
+        }
+        Arrays.sort(keys);
+        int[] order = new int[keys.length];
+        long offsetMask = (1L << offsetBits) - 1;
+        for (int k = 0; k < keys.length; k++) order[k] = from + (int) (keys[k] & offsetMask);
+        return order;
     }
 
-    private String harmonizeChromoToChain(String chromo){
-        String formatedChromo = chromo.trim();
-        String completeExpression = "^.+";
+    private static boolean isSorted(int[] contigIds, long[] starts, int from, int to) {
+        for (int i = from + 1; i < to; i++) {
+            if (Integer.compareUnsigned(contigIds[i - 1], contigIds[i]) > 0
+                    || (contigIds[i - 1] == contigIds[i] && starts[i - 1] > starts[i])) return false;
+        }
+        return true;
+    }
 
-        if(notChainFormat(chromo)) {
-            if (matchesMitoCase(chromo))
-                formatedChromo = chromo.replaceAll(completeExpression, "chrM");
-            if (isNumericSexChromo(chromo)){
-                formatedChromo = formatNumericSexChromoToChain(chromo);
+    public void liftOverBatch(int[] contigIds, int[] starts, int[] ends, int from, int to,
+                              int[] liftedContigIds, int[] liftedStarts, int[] liftedEnds, byte[] status) {
+        ChainIndex index = getChainIndex();
+        int[] lifted = new int[ChainIndex.RESULT_SIZE];
+        for (int i = from; i < to; i++) {
+            if (!liftRow(index, contigIds[i], starts[i], ends[i], lifted)) {
+                status[i] = isValid(contigIds[i], starts[i], ends[i]) ? UNMAPPED : INVALID;
+                liftedContigIds[i] = Contigs.UNKNOWN;
+                liftedStarts[i] = -1;
+                liftedEnds[i] = -1;
+            } else {
+                status[i] = LIFTED;
+                liftedContigIds[i] = lifted[ChainIndex.CONTIG];
+                liftedStarts[i] = lifted[ChainIndex.START];
+                liftedEnds[i] = lifted[ChainIndex.END];
             }
-            else
-                formatedChromo = changeStringToChainFormat(chromo);
         }
-        return formatedChromo;
     }
 
-    private String formatNumericSexChromoToChain(String chromo){
-        String formatedChromo;
-        if (chromo.matches("^.*23")){
-            formatedChromo = "chrX";
+    /**
+     * Fills the same outputs as {@link #liftOverBatch} for rows already on the target build, without
+     * a chain lookup: every valid row is {@link #LIFTED} to its own coordinates.
+     */
+    public static void passThrough(int[] contigIds, long[] starts, long[] ends, int from, int to, int[] liftedContigIds,
+                                   long[] liftedStarts, long[] liftedEnds, boolean[] negativeStrands, byte[] status) {
+        for (int i = from; i < to; i++) {
+            boolean valid = isValid(contigIds[i], starts[i], ends[i]);
+            status[i] = valid ? LIFTED : INVALID;
+            liftedContigIds[i] = valid ? contigIds[i] : Contigs.UNKNOWN;
+            liftedStarts[i] = valid ? starts[i] : -1;
+            liftedEnds[i] = valid ? ends[i] : -1;
+            if (negativeStrands != null) negativeStrands[i] = false;
         }
-        else {
-            formatedChromo = "chrY";
-        }
-        return formatedChromo;
     }
 
-    private boolean matchesMitoCase(String chromo){
-        return chromo.trim().matches("(?i)(chrmt|mt)");
+    /**
+     * Fills the same outputs as {@link #liftOverBatch} for rows whose build has no chain file: every
+     * valid row is {@link #UNMAPPED}, as if the chain had no block for it, and the others
+     * {@link #INVALID}.
+     */
+    public static void noChain(int[] contigIds, long[] starts, long[] ends, int from, int to, int[] liftedContigIds,
+                               long[] liftedStarts, long[] liftedEnds, boolean[] negativeStrands, byte[] status) {
+        for (int i = from; i < to; i++) {
+            status[i] = isValid(contigIds[i], starts[i], ends[i]) ? UNMAPPED : INVALID;
+            liftedContigIds[i] = Contigs.UNKNOWN;
+            liftedStarts[i] = -1;
+            liftedEnds[i] = -1;
+            if (negativeStrands != null) negativeStrands[i] = false;
+        }
     }
 
-    private String changeStringToChainFormat(String chromo){
-        return chromo.toUpperCase().replaceAll("(?i)^(?:chr)?([0-9]{1,2}|[xym]|Un).*$", "chr$1");
+    /**
+     * Resolves a chromosome as written in a provider sheet to its contig id.
+     */
+    public int contigIdOf(String chromosome) {
+        return ChromosomeNormalizer.contigIdOf(chromosome);
     }
 
-    private boolean isNumericSexChromo(String chromo){
-        return chromo.matches("^.*2[34]");
+    private boolean liftRow(ChainIndex index, int contigId, long start, long end, int[] lifted) {
+        if (!isValid(contigId, start, end)) return false;
+        LiftOverCache cache = liftCache;
+        if (cache != null && cache.getChainIndex() == index) return cache.liftOver(contigId, (int) start, (int) end, lifted);
+        return index.liftOver(contigId, (int) start, (int) end, lifted);
+    }
 
+    private static boolean isValid(int contigId, long start, long end) {
+        return contigId != Contigs.UNKNOWN && start > 0 && end >= start && end <= Integer.MAX_VALUE;
     }
 
-    private boolean notChainFormat(String chromo){
-        return ! chromo.matches("(?i)^chr([0-9]{1,2}|[XYM]|Un)$");
+    private List<String> executeLiftOver(Map<String,long[]> genomeCoord) {
+        List<String> allIntervals = new ArrayList<>();
+        int[] contigId = new int[1];
+        long[] start = new long[1];
+        long[] end = new long[1];
+        int[] liftedContigId = new int[1];
+        long[] liftedStart = new long[1];
+        long[] liftedEnd = new long[1];
+        byte[] status = new byte[1];
+        genomeCoord.forEach((chromosome, coordinates) -> {
+            contigId[0] = contigIdOf(chromosome);
+            start[0] = coordinates[0];
+            end[0] = coordinates[1];
+            liftOverBatch(contigId, start, end, 0, 1, liftedContigId, liftedStart, liftedEnd, status);
+            if(status[0] != LIFTED) {
+                allIntervals.add(ERRORSTR);
+            }
+            else {
+                allIntervals.add(Contigs.vcfName(liftedContigId[0]));
+                allIntervals.add(String.valueOf(liftedStart[0]));
+                allIntervals.add(String.valueOf(liftedEnd[0]));
+            }
+        });
+        return allIntervals;
     }
 
     public File getChainFile(){
         return new File(chainFileURI);
     }
 
+    public ChainIndex getChainIndex(){
+        ChainIndex index = chainIndex;
+        if(index == null) {
+            index = ChainIndexRegistry.get(chainFileURI);
+            chainIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * Puts a cache in front of the chain index for {@link #liftOverBatch}. The cache is skipped if it
+     * was made for another chain file. Sweeps do not use it.
+     */
+    public void setLiftCache(LiftOverCache liftCache){
+        this.liftCache = liftCache;
+    }
+
+    public LiftOverCache getLiftCache(){
+        return liftCache;
+    }
+
     public void setChainFileURI(String chainFileURI){
         this.chainFileURI = chainFileURI;
+        this.chainIndex = null;
     }
 }
\ No newline at end of file
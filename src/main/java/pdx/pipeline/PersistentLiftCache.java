@@ -0,0 +1,364 @@
+package pdx.pipeline;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Lift results kept on disk between runs. Each chain file gets its own append-only file named
+ * after the chain file and its SHA-256, {@code <chain file>-<digest>.liftcache}, so editing or
+ * replacing the chain file starts a new cache and the old one is deleted. The file is read into
+ * a bounded in memory cache when opened, and coordinates lifted for the first time are appended
+ * as the run goes. Once the file holds more records than the cache keeps, it is rewritten with
+ * only the kept ones when the cache is closed, so neither the heap nor the file grows past the
+ * bound from one run to the next. A lift thread never waits for the file: new records are queued
+ * and written by whichever thread finds the file free. A record cut short by a crash is dropped
+ * the next time the file is opened.
+ */
+public final class PersistentLiftCache implements LiftOverCache, Closeable {
+
+    static final String SUFFIX = ".liftcache";
+
+    private static final Logger log = LoggerFactory.getLogger(PersistentLiftCache.class);
+
+    private static final int MAGIC = 0x50444c43;
+    private static final int VERSION = 1;
+    private static final byte CONTIG_RECORD = 'C';
+    private static final byte LIFT_RECORD = 'L';
+    private static final int[] NOT_LIFTED = new int[0];
+
+    /**
+     * Lifted coordinates kept when no other bound is given, roughly 100 MB of heap.
+     */
+    public static final long DEFAULT_MAXIMUM_SIZE = 1 << 20;
+
+    private final ChainIndex index;
+    private final Path file;
+    private final long maximumSize;
+    private final Cache<IntervalKey, int[]> entries;
+    private final Map<Integer, Integer> localContigIds = new HashMap<>();
+    private final Queue<Record> unwritten = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock fileLock = new ReentrantLock();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final long loaded;
+    // guarded by fileLock
+    private long appended;
+    private long recordsInFile;
+    private boolean writeFailed;
+    private DataOutputStream out;
+
+    private PersistentLiftCache(ChainIndex index, Path file, long maximumSize) throws IOException {
+        if (maximumSize < 1) throw new IllegalArgumentException("The lift cache needs room for at least one entry");
+        this.index = index;
+        this.file = file;
+        this.maximumSize = maximumSize;
+        this.entries = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .executor(Runnable::run)
+                .build();
+        this.loaded = Files.exists(file) ? load() : 0;
+        this.recordsInFile = loaded;
+        boolean append = Files.exists(file);
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING), 1 << 16));
+        if (!append) writeHeader(out);
+    }
+
+    /**
+     * Opens the cache for {@code index} in {@code directory} keeping up to
+     * {@link #DEFAULT_MAXIMUM_SIZE} coordinates, see {@link #open(Path, ChainIndex, long)}.
+     */
+    public static PersistentLiftCache open(Path directory, ChainIndex index) throws IOException {
+        return open(directory, index, DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * Opens the cache for {@code index} in {@code directory}, keeping up to {@code maximumSize}
+     * lifted coordinates, and deletes caches of earlier versions of the same chain file.
+     */
+    public static PersistentLiftCache open(Path directory, ChainIndex index, long maximumSize) throws IOException {
+        Files.createDirectories(directory);
+        String chainName = Paths.get(index.getChainPath()).getFileName().toString();
+        Path file = directory.resolve(chainName + "-" + Digests.toHex(index.getChainDigest()).substring(0, 16) + SUFFIX);
+        try (DirectoryStream<Path> caches = Files.newDirectoryStream(directory, chainName + "-*" + SUFFIX)) {
+            for (Path stale : caches) {
+                if (!stale.equals(file)) {
+                    log.info(String.format("Deleting lift cache %s, the chain file has changed", stale));
+                    Files.delete(stale);
+                }
+            }
+        }
+        PersistentLiftCache cache = new PersistentLiftCache(index, file, maximumSize);
+        log.info(String.format("Opened lift cache %s with %d lifted coordinates", file, cache.loaded));
+        return cache;
+    }
+
+    private long load() throws IOException {
+        long records = 0;
+        long validLength = 0;
+        int[] globalContigIds = new int[64];
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return discard("it is not a lift cache of this version");
+            byte[] digest = new byte[Digests.SHA256_LENGTH];
+            in.readFully(digest);
+            if (!Arrays.equals(digest, index.getChainDigest())) return discard("it was built from another chain file");
+            validLength = 8 + Digests.SHA256_LENGTH;
+            while (true) {
+                int type = in.read();
+                if (type == -1) break;
+                if (type == CONTIG_RECORD) {
+                    int localId = in.readInt();
+                    byte[] name = new byte[in.readUnsignedShort()];
+                    in.readFully(name);
+                    if (localId >= globalContigIds.length) globalContigIds = Arrays.copyOf(globalContigIds, localId * 2 + 1);
+                    globalContigIds[localId] = Contigs.idOf(new String(name, StandardCharsets.UTF_8));
+                    localContigIds.put(globalContigIds[localId], localId);
+                    validLength += 1 + 4 + 2 + name.length;
+                } else if (type == LIFT_RECORD) {
+                    IntervalKey key = new IntervalKey(globalContigIds[in.readInt()], in.readInt(), in.readInt());
+                    int[] lifted = NOT_LIFTED;
+                    if (in.readBoolean()) {
+                        lifted = new int[ChainIndex.RESULT_SIZE];
+                        lifted[ChainIndex.CONTIG] = globalContigIds[in.readInt()];
+                        lifted[ChainIndex.START] = in.readInt();
+                        lifted[ChainIndex.END] = in.readInt();
+                        lifted[ChainIndex.NEGATIVE_STRAND] = in.readByte();
+                    }
+                    entries.put(key, lifted);
+                    records++;
+                    validLength += lifted == NOT_LIFTED ? 1 + 12 + 1 : 1 + 12 + 1 + 13;
+                } else {
+                    log.warn(String.format("Unknown record in lift cache %s, keeping the first %d records", file, records));
+                    break;
+                }
+            }
+        } catch (EOFException e) {
+            log.warn(String.format("Lift cache %s ends in a partial record, keeping the first %d records", file, records));
+        }
+        if (validLength < 8 + Digests.SHA256_LENGTH) return discard("its header is incomplete");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            if (channel.size() > validLength) channel.truncate(validLength);
+        }
+        return records;
+    }
+
+    private long discard(String reason) throws IOException {
+        log.info(String.format("Starting lift cache %s again because %s", file, reason));
+        entries.invalidateAll();
+        localContigIds.clear();
+        Files.delete(file);
+        return 0;
+    }
+
+    @Override
+    public boolean liftOver(int contigId, int start, int end, int[] lifted) {
+        IntervalKey key = new IntervalKey(contigId, start, end);
+        int[] cached = entries.getIfPresent(key);
+        if (cached == null) {
+            misses.increment();
+            cached = index.liftOver(contigId, start, end, lifted) ? lifted.clone() : NOT_LIFTED;
+            if (entries.asMap().putIfAbsent(key, cached) == null) {
+                unwritten.add(new Record(key, cached));
+                writeRecords(false);
+            }
+            return cached != NOT_LIFTED;
+        }
+        hits.increment();
+        if (cached == NOT_LIFTED) return false;
+        System.arraycopy(cached, 0, lifted, 0, ChainIndex.RESULT_SIZE);
+        return true;
+    }
+
+    /**
+     * Appends the queued records. Without {@code wait} a thread that finds another one writing
+     * leaves its record for that thread, or the next one, to write.
+     */
+    private void writeRecords(boolean wait) {
+        if (wait) fileLock.lock();
+        else if (!fileLock.tryLock()) return;
+        try {
+            Record record;
+            while ((record = unwritten.poll()) != null) {
+                if (writeFailed || out == null) continue;
+                try {
+                    writeRecord(out, localContigIds, record.key, record.lifted);
+                    appended++;
+                    recordsInFile++;
+                } catch (IOException e) {
+                    writeFailed = true;
+                    log.error(String.format("Could not append to lift cache %s, new lifts will not be saved: %s", file, e));
+                }
+            }
+        } finally {
+            fileLock.unlock();
+        }
+    }
+
+    private void writeHeader(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.write(index.getChainDigest());
+    }
+
+    private static void writeRecord(DataOutputStream out, Map<Integer, Integer> localIds, IntervalKey key, int[] lifted) throws IOException {
+        int contig = localContigId(out, localIds, key.contigId);
+        int liftedContig = lifted == NOT_LIFTED ? -1 : localContigId(out, localIds, lifted[ChainIndex.CONTIG]);
+        out.writeByte(LIFT_RECORD);
+        out.writeInt(contig);
+        out.writeInt(key.start);
+        out.writeInt(key.end);
+        out.writeBoolean(lifted != NOT_LIFTED);
+        if (lifted != NOT_LIFTED) {
+            out.writeInt(liftedContig);
+            out.writeInt(lifted[ChainIndex.START]);
+            out.writeInt(lifted[ChainIndex.END]);
+            out.writeByte(lifted[ChainIndex.NEGATIVE_STRAND]);
+        }
+    }
+
+    private static int localContigId(DataOutputStream out, Map<Integer, Integer> localIds, int contigId) throws IOException {
+        Integer localId = localIds.get(contigId);
+        if (localId != null) return localId;
+        int newId = localIds.size();
+        byte[] name = Contigs.chainName(contigId).getBytes(StandardCharsets.UTF_8);
+        out.writeByte(CONTIG_RECORD);
+        out.writeInt(newId);
+        out.writeShort(name.length);
+        out.write(name);
+        localIds.put(contigId, newId);
+        return newId;
+    }
+
+    /**
+     * Rewrites the file with only the coordinates the cache kept, through a temporary file so a
+     * crash leaves the old file in place.
+     */
+    private void compact() throws IOException {
+        Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        long records = 0;
+        try {
+            try (DataOutputStream compacted = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING), 1 << 16))) {
+                writeHeader(compacted);
+                Map<Integer, Integer> localIds = new HashMap<>();
+                for (Map.Entry<IntervalKey, int[]> entry : entries.asMap().entrySet()) {
+                    writeRecord(compacted, localIds, entry.getKey(), entry.getValue());
+                    records++;
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        log.info(String.format("Compacted lift cache %s from %d to %d records", file, recordsInFile, records));
+        recordsInFile = records;
+    }
+
+    @Override
+    public ChainIndex getChainIndex() {
+        return index;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public long getLoadedCount() {
+        return loaded;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getAppendedCount() {
+        fileLock.lock();
+        try {
+            return appended;
+        } finally {
+            fileLock.unlock();
+        }
+    }
+
+    /**
+     * Records in the file, which may include coordinates the cache no longer keeps until it is
+     * compacted on close.
+     */
+    public long getRecordsInFile() {
+        fileLock.lock();
+        try {
+            return recordsInFile;
+        } finally {
+            fileLock.unlock();
+        }
+    }
+
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Writes the records still queued, closes the file and compacts it if it holds more records
+     * than the cache keeps.
+     */
+    @Override
+    public void close() throws IOException {
+        writeRecords(true);
+        fileLock.lock();
+        try {
+            if (out == null) return;
+            out.close();
+            out = null;
+            if (!writeFailed && recordsInFile > maximumSize) compact();
+        } finally {
+            fileLock.unlock();
+        }
+    }
+
+    private static final class Record {
+
+        final IntervalKey key;
+        final int[] lifted;
+
+        Record(IntervalKey key, int[] lifted) {
+            this.key = key;
+            this.lifted = lifted;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Lift cache %s: %d coordinates loaded, %d hits, %d misses, %d appended",
+                file, loaded, getHitCount(), getMissCount(), getAppendedCount());
+    }
+}
@@ -0,0 +1,12 @@
+package pdx.pipeline;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Receives the rows of a sheet one at a time, e.g. a lift in progress or an output file.
+ */
+public interface RowSink {
+
+    void accept(ArrayList<String> row) throws IOException;
+}
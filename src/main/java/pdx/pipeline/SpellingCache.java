@@ -0,0 +1,45 @@
+package pdx.pipeline;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Remembers what the last {@code capacity} distinct spellings of a provider value resolved to,
+ * evicting the least recently used one when full, so a sheet with endless odd spellings keeps
+ * the hits for the common ones without growing.
+ */
+final class SpellingCache<V> {
+
+    private final Map<String, V> entries;
+
+    SpellingCache(int capacity) {
+        this.entries = new LinkedHashMap<String, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * The cached value of {@code spelling}, resolving and caching it on a miss. Resolution runs
+     * outside the lock.
+     */
+    V get(String spelling, Function<String, V> resolve) {
+        V value;
+        synchronized (this) {
+            value = entries.get(spelling);
+        }
+        if (value != null) return value;
+        value = resolve.apply(spelling);
+        synchronized (this) {
+            entries.put(spelling, value);
+        }
+        return value;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+}
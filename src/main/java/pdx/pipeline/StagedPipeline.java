@@ -0,0 +1,264 @@
+package pdx.pipeline;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Passes items through a chain of stages, for example read, lift and write. Each stage has its own
+ * threads and a bounded queue in front of it. When a stage falls behind its queue fills up and the
+ * stage before it blocks, so no more items are held in memory than the queues allow. Every stage
+ * records how long its threads were busy, how long they waited for room in the next queue and the
+ * deepest its queue got, which shows where the bottleneck is. An item that fails in a stage is
+ * logged and dropped without stopping the others, and a stage may drop an item by returning null.
+ */
+public class StagedPipeline<T> {
+
+    /**
+     * The work of one stage. Returning null drops the item.
+     */
+    public interface Step<I, O> {
+        O process(I item) throws Exception;
+    }
+
+    private static final Object END = new Object();
+    private static final long REPORT_INTERVAL_SECONDS = 30;
+
+    private final Logger log = LoggerFactory.getLogger(StagedPipeline.class);
+
+    private final String sourceName;
+    private final List<Stage> stages;
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder sourceBlockedNanos = new LongAdder();
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final long startTime = System.nanoTime();
+
+    private StagedPipeline(String sourceName, List<Stage> stages) {
+        this.sourceName = sourceName;
+        this.stages = Collections.unmodifiableList(stages);
+        for (Stage stage : stages) {
+            for (int i = 1; i <= stage.threads; i++) {
+                Thread worker = new Thread(() -> work(stage), stage.name + "-" + i);
+                worker.start();
+            }
+        }
+    }
+
+    /**
+     * Starts describing a pipeline whose items come from {@code sourceName}, such as the crawler.
+     */
+    public static <T> Builder<T, T> from(String sourceName) {
+        return new Builder<>(sourceName, new ArrayList<>());
+    }
+
+    /**
+     * Queues an item for the first stage, blocking while its queue is full.
+     */
+    public void submit(T item) {
+        long start = System.nanoTime();
+        try {
+            put(stages.get(0), item);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queueing " + item, e);
+        } finally {
+            sourceBlockedNanos.add(System.nanoTime() - start);
+        }
+        submitted.increment();
+    }
+
+    /**
+     * Signals that no more items will be submitted, waits for every stage to finish and logs the
+     * stage statistics.
+     */
+    public void awaitCompletion() throws InterruptedException {
+        end(stages.get(0));
+        while (!done.await(REPORT_INTERVAL_SECONDS, TimeUnit.SECONDS)) {
+            log.info(String.format("Pipeline still running:%n%s", report()));
+        }
+        log.info(String.format("Pipeline finished in %.1f s:%n%s", getElapsedNanos() / 1e9, report()));
+    }
+
+    public List<Stage> getStages() {
+        return stages;
+    }
+
+    public long getSubmittedCount() {
+        return submitted.sum();
+    }
+
+    public long getSourceBlockedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(sourceBlockedNanos.sum());
+    }
+
+    private long getElapsedNanos() {
+        return System.nanoTime() - startTime;
+    }
+
+    /**
+     * One line per stage with its counts, busy and blocked time and queue depth.
+     */
+    public String report() {
+        StringBuilder report = new StringBuilder(String.format("  %s: %d submitted, blocked %.1f s on a full %s queue",
+                sourceName, getSubmittedCount(), getSourceBlockedMillis() / 1000.0, stages.get(0).name));
+        long elapsed = getElapsedNanos();
+        for (Stage stage : stages) report.append(System.lineSeparator()).append("  ").append(stage.describe(elapsed));
+        return report.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void work(Stage stage) {
+        try {
+            while (true) {
+                Object item = stage.queue.take();
+                if (item == END) break;
+                Object output = null;
+                long start = System.nanoTime();
+                try {
+                    output = ((Step<Object, Object>) stage.step).process(item);
+                    stage.processed.increment();
+                } catch (Exception e) {
+                    stage.failed.increment();
+                    log.error(String.format("%s failed for %s: %s", stage.name, item, e), e);
+                } finally {
+                    stage.busyNanos.add(System.nanoTime() - start);
+                }
+                if (output != null && stage.next != null) {
+                    long blockedSince = System.nanoTime();
+                    put(stage.next, output);
+                    stage.blockedNanos.add(System.nanoTime() - blockedSince);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (stage.running.decrementAndGet() == 0) {
+                if (stage.next == null) done.countDown();
+                else end(stage.next);
+            }
+        }
+    }
+
+    private static void put(Stage stage, Object item) throws InterruptedException {
+        stage.queue.put(item);
+        stage.maxDepth.accumulateAndGet(stage.queue.size(), Math::max);
+    }
+
+    private void end(Stage stage) {
+        try {
+            for (int i = 0; i < stage.threads; i++) stage.queue.put(END);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error(String.format("Interrupted while stopping %s", stage.name));
+        }
+    }
+
+    public static final class Builder<T, O> {
+
+        private final String sourceName;
+        private final List<Stage> stages;
+
+        private Builder(String sourceName, List<Stage> stages) {
+            this.sourceName = sourceName;
+            this.stages = stages;
+        }
+
+        /**
+         * Adds a stage run by {@code threads} threads, with room for two items per thread in its queue.
+         */
+        public <R> Builder<T, R> then(String name, int threads, Step<? super O, ? extends R> step) {
+            if (threads < 1) throw new IllegalArgumentException(String.format("Stage %s needs at least one thread", name));
+            Stage stage = new Stage(name, threads, threads * 2, step);
+            if (!stages.isEmpty()) stages.get(stages.size() - 1).next = stage;
+            stages.add(stage);
+            return new Builder<>(sourceName, stages);
+        }
+
+        /**
+         * Starts the threads of every stage.
+         */
+        public StagedPipeline<T> start() {
+            if (stages.isEmpty()) throw new IllegalStateException("A pipeline needs at least one stage");
+            return new StagedPipeline<>(sourceName, new ArrayList<>(stages));
+        }
+    }
+
+    public static final class Stage {
+
+        private final String name;
+        private final int threads;
+        private final int capacity;
+        private final Step<?, ?> step;
+        private final BlockingQueue<Object> queue;
+        private final LongAdder processed = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder busyNanos = new LongAdder();
+        private final LongAdder blockedNanos = new LongAdder();
+        private final AtomicInteger maxDepth = new AtomicInteger();
+        private final AtomicInteger running;
+        private Stage next;
+
+        private Stage(String name, int threads, int capacity, Step<?, ?> step) {
+            this.name = name;
+            this.threads = threads;
+            this.capacity = capacity;
+            this.step = step;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.running = new AtomicInteger(threads);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public long getProcessedCount() {
+            return processed.sum();
+        }
+
+        public long getFailedCount() {
+            return failed.sum();
+        }
+
+        public long getBusyMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(busyNanos.sum());
+        }
+
+        public long getBlockedMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(blockedNanos.sum());
+        }
+
+        public int getQueueDepth() {
+            int depth = 0;
+            for (Object item : queue) if (item != END) depth++;
+            return depth;
+        }
+
+        public int getMaxQueueDepth() {
+            return maxDepth.get();
+        }
+
+        public int getQueueCapacity() {
+            return capacity;
+        }
+
+        private String describe(long elapsedNanos) {
+            double utilisation = elapsedNanos == 0 ? 0 : busyNanos.sum() * 100.0 / (elapsedNanos * threads);
+            return String.format("%s: %d done, %d failed, busy %.1f s (%.0f%% of %d threads), blocked %.1f s, queue %d/%d, max %d",
+                    name, getProcessedCount(), getFailedCount(), getBusyMillis() / 1000.0, utilisation, threads,
+                    getBlockedMillis() / 1000.0, getQueueDepth(), capacity, getMaxQueueDepth());
+        }
+    }
+}
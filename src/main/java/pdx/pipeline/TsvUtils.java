@@ -1,65 +1,267 @@
 package pdx.pipeline;
 
-import java.io.DataInputStream;
-import java.io.FileInputStream;
-import java.io.FileWriter;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
 
 public class TsvUtils {
 
+    public enum Compression {
+        NONE(""),
+        GZIP(".gz"),
+        BGZIP(".gz");
+
+        private final String suffix;
+
+        Compression(String suffix) {
+            this.suffix = suffix;
+        }
+
+        public String getSuffix() {
+            return suffix;
+        }
+    }
+
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+    private Compression compression = Compression.NONE;
 
     public void writeTSV(ArrayList<ArrayList<String>> sheet, String fileURI) throws IOException {
 
-        FileWriter tsvWriter = new FileWriter(fileURI);
+        try (TsvWriter tsvWriter = openTsvWriter(fileURI)) {
+            for (ArrayList<String> rowData : sheet) {
+                tsvWriter.accept(rowData);
+            }
+        }
+    }
 
-        for(ArrayList<String> rowData : sheet) {
+    /**
+     * Writes the header and the selected rows of a columnar sheet, overlays applied.
+     */
+    public void writeTSV(ColumnarSheet sheet, String fileURI) throws IOException {
 
-            tsvWriter.append((String.join("\t", rowData)));
-            tsvWriter.append("\n");
+        try (TsvWriter tsvWriter = openTsvWriter(fileURI)) {
+            for (int row = 0; row < sheet.getRowCount(); row++) {
+                if (sheet.isSelected(row)) tsvWriter.accept(sheet, row);
+            }
+        }
+    }
 
+    /**
+     * Reads a delimited file into a columnar sheet. Cells are copied into the sheet's pool as raw
+     * bytes, without being decoded to strings.
+     */
+    public ColumnarSheet readColumnar(String dataFile, String delimiter, ColumnarSheet.Builder builder) throws IOException {
+        try (DelimitedReader reader = new DelimitedReader(Paths.get(dataFile), toDelimiterChar(delimiter))) {
+            while (reader.next()) {
+                builder.addRow(reader);
+            }
         }
-        tsvWriter.flush();
-        tsvWriter.close();
+        return builder.build();
     }
 
     public ArrayList<ArrayList<String>> readCsv(String dataFile, String delimiter){
 
-        FileInputStream fileStream = null;
-            try{
-            fileStream = new FileInputStream(dataFile);
+        ArrayList<ArrayList<String>> dataArrayList = new ArrayList<>();
+
+        try (DelimitedReader reader = new DelimitedReader(Paths.get(dataFile), toDelimiterChar(delimiter))) {
+
+            while (reader.next())
+            {
+                dataArrayList.add(reader.toList());
+            }
+
         }catch (Exception e){
             e.printStackTrace();
         }
-        DataInputStream myInput = new DataInputStream(fileStream);
 
+            return dataArrayList;
+    }
 
-        String thisLine;
-        int i=0;
-        ArrayList lineList = null;
-        ArrayList<ArrayList<String>> dataArrayList = new ArrayList<>();
+    /**
+     * Reads a delimited file line by line and hands each row to {@code sink}, so the file is
+     * never held in memory as a whole.
+     */
+    public void streamCsv(String dataFile, String delimiter, RowSink sink) throws IOException {
+        try (DelimitedReader reader = new DelimitedReader(Paths.get(dataFile), toDelimiterChar(delimiter))) {
+            while (reader.next()) {
+                sink.accept(reader.toList());
+            }
+        }
+    }
+
+    /**
+     * Reads a delimited file line by line and hands each row to {@code patchLift} as raw bytes, so
+     * rows are neither decoded nor split into strings.
+     */
+    public void patchCsv(String dataFile, String delimiter, OmicHarmonizer.PatchLift patchLift) throws IOException {
+        try (DelimitedReader reader = new DelimitedReader(Paths.get(dataFile), toDelimiterChar(delimiter))) {
+            while (reader.next()) {
+                patchLift.accept(reader);
+            }
+        }
+    }
 
-            try {
+    private char toDelimiterChar(String delimiter) {
+        if (delimiter.length() != 1) throw new IllegalArgumentException("Expected a single character delimiter, got " + delimiter);
+        return delimiter.charAt(0);
+    }
 
-            while ((thisLine = myInput.readLine()) != null)
-            {
-                lineList = new ArrayList();
+    public TsvWriter openTsvWriter(String fileURI) throws IOException {
+        return new TsvWriter(fileURI, compression);
+    }
+
+    public Compression getCompression() {
+        return compression;
+    }
+
+    public void setCompression(Compression compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * Writes rows to a UTF-8 TSV file as they arrive. Each row is assembled in a single reused
+     * builder and handed to a large buffer, and the output can be gzip or bgzip compressed. Rows
+     * of a {@link ColumnarSheet} are copied from its pool as bytes without being decoded.
+     */
+    public static class TsvWriter implements RowSink, Closeable {
+
+        private final OutputStream out;
+        private final Writer writer;
+        private final StringBuilder rowBuilder = new StringBuilder(1024);
+        private char[] rowChars = new char[1024];
+        private byte[] rowBytes = new byte[1024];
+        private boolean charsPending;
+
+        private TsvWriter(String fileURI, Compression compression) throws IOException {
+            this.out = openStream(new File(fileURI), compression);
+            this.writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        }
 
-                String strar[] = thisLine.split(delimiter);
-                for(int j=0;j<strar.length;j++)
-                {
-                    lineList.add(strar[j]);
+        private static OutputStream openStream(File file, Compression compression) throws IOException {
+            switch (compression) {
+                case GZIP:
+                    return new GZIPOutputStream(new FileOutputStream(file), WRITE_BUFFER_SIZE);
+                case BGZIP:
+                    return new BlockCompressedOutputStream(file);
+                default:
+                    return new BufferedOutputStream(new FileOutputStream(file), WRITE_BUFFER_SIZE);
+            }
+        }
+
+        @Override
+        public void accept(ArrayList<String> rowData) throws IOException {
+            rowBuilder.setLength(0);
+            for (int i = 0; i < rowData.size(); i++) {
+                if (i > 0) rowBuilder.append('\t');
+                rowBuilder.append(rowData.get(i));
+            }
+            rowBuilder.append('\n');
+            int length = rowBuilder.length();
+            if (length > rowChars.length) rowChars = new char[Math.max(length, rowChars.length * 2)];
+            rowBuilder.getChars(0, length, rowChars, 0);
+            writer.write(rowChars, 0, length);
+            charsPending = true;
+        }
+
+        /**
+         * Writes {@code row} of {@code sheet}, with overlay values in place of the text read from the file.
+         */
+        public void accept(ColumnarSheet sheet, int row) throws IOException {
+            flushChars();
+            int length = 0;
+            int width = sheet.getWidth(row);
+            for (int c = 0; c < width; c++) {
+                if (c > 0) rowBytes = put(rowBytes, length++, (byte) '\t');
+                Object overlay = sheet.overlayFor(row, c);
+                if (overlay instanceof long[]) {
+                    length = putLong(((long[]) overlay)[row], length);
+                } else if (overlay != null) {
+                    byte[] text = ((String[]) overlay)[row].getBytes(StandardCharsets.UTF_8);
+                    rowBytes = ensure(rowBytes, length + text.length);
+                    System.arraycopy(text, 0, rowBytes, length, text.length);
+                    length += text.length;
+                } else {
+                    int cellLength = sheet.getCellLength(row, c);
+                    rowBytes = ensure(rowBytes, length + cellLength);
+                    sheet.copyCell(row, c, rowBytes, length);
+                    length += cellLength;
                 }
-                dataArrayList.add(lineList);
-                i++;
             }
+            rowBytes = put(rowBytes, length++, (byte) '\n');
+            out.write(rowBytes, 0, length);
+        }
 
-        }catch (Exception e){
-            e.printStackTrace();
+        /**
+         * Writes bytes of a row the caller assembles itself, already tab delimited and UTF-8.
+         */
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            flushChars();
+            out.write(bytes, offset, length);
         }
 
-            return dataArrayList;
+        /**
+         * Writes the digits of {@code value} as part of a row the caller assembles itself.
+         */
+        public void write(long value) throws IOException {
+            flushChars();
+            out.write(rowBytes, 0, putLong(value, 0));
+        }
+
+        private void flushChars() throws IOException {
+            if (charsPending) {
+                writer.flush();
+                charsPending = false;
+            }
+        }
+
+        private int putLong(long value, int at) {
+            if (value == Long.MIN_VALUE) {
+                byte[] text = String.valueOf(value).getBytes(StandardCharsets.US_ASCII);
+                rowBytes = ensure(rowBytes, at + text.length);
+                System.arraycopy(text, 0, rowBytes, at, text.length);
+                return at + text.length;
+            }
+            rowBytes = ensure(rowBytes, at + 20);
+            if (value < 0) {
+                rowBytes[at++] = '-';
+                value = -value;
+            }
+            int digits = 1;
+            for (long rest = value / 10; rest > 0; rest /= 10) digits++;
+            for (int i = at + digits - 1; i >= at; i--) {
+                rowBytes[i] = (byte) ('0' + value % 10);
+                value /= 10;
+            }
+            return at + digits;
+        }
+
+        private static byte[] put(byte[] bytes, int at, byte value) {
+            bytes = ensure(bytes, at + 1);
+            bytes[at] = value;
+            return bytes;
+        }
+
+        private static byte[] ensure(byte[] bytes, int length) {
+            return length <= bytes.length ? bytes : Arrays.copyOf(bytes, Math.max(length, bytes.length * 2));
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
     }
 
 }
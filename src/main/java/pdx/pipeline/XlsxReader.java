@@ -3,46 +3,159 @@ package pdx.pipeline;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.SAXHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.Optional;
+import java.util.Iterator;
 
 public class XlsxReader {
 
     Logger log = LoggerFactory.getLogger(XlsxReader.class);
 
-    Optional<Workbook> xslxWorkbook;
-    ArrayList<ArrayList<String>> sheetData = null;
-
     public ArrayList<ArrayList<String>> readFirstSheet(File xlsx) {
 
-        xslxWorkbook = getWorkbook(xlsx);
+        if (!xlsx.exists()) return null;
 
-        if( xslxWorkbook.isPresent() ){
-            sheetData = iterateThroughSheet(getSheet(xslxWorkbook));
+        ArrayList<ArrayList<String>> sheetData = new ArrayList<>();
+        try {
+            streamFirstSheet(xlsx, sheetData::add);
+        } catch (IOException e) {
+            log.error("There was a problem accessing the file: {}", e);
+            sheetData = null;
         }
         return sheetData;
     }
 
-    private Optional<Workbook> getWorkbook(File file) {
+    /**
+     * Reads the first sheet with POI's SAX event API and passes each row to {@code sink} as soon
+     * as it has been parsed, so the workbook is never loaded into memory. Cells are formatted
+     * exactly as {@link #getString(Cell)} formats them.
+     */
+    public void streamFirstSheet(File xlsx, RowSink sink) throws IOException {
+        try (OPCPackage xlsxPackage = OPCPackage.open(xlsx, PackageAccess.READ)) {
+            ReadOnlySharedStringsTable sharedStrings = new ReadOnlySharedStringsTable(xlsxPackage);
+            Iterator<InputStream> sheets = new XSSFReader(xlsxPackage).getSheetsData();
+            if (!sheets.hasNext()) return;
+            try (InputStream sheet = sheets.next()) {
+                XMLReader parser = SAXHelper.newXMLReader();
+                parser.setContentHandler(new SheetHandler(sharedStrings, sink));
+                parser.parse(new InputSource(sheet));
+            }
+        } catch (SAXException e) {
+            if (e.getException() instanceof IOException) throw (IOException) e.getException();
+            throw new IOException("Could not parse " + xlsx, e);
+        } catch (OpenXML4JException | ParserConfigurationException e) {
+            throw new IOException("Could not open " + xlsx, e);
+        }
+    }
 
-        if (!file.exists()) return Optional.empty();
+    /**
+     * Builds rows from the sheet XML. Gaps between cells are filled with blanks and each row
+     * ends at its last cell, the same as iterating the DOM up to {@code getLastCellNum}.
+     */
+    private static class SheetHandler extends DefaultHandler {
+
+        private final ReadOnlySharedStringsTable sharedStrings;
+        private final RowSink sink;
+        private final StringBuilder value = new StringBuilder();
+        private ArrayList<String> row;
+        private String cellType;
+        private int column;
+        private boolean hasFormula;
+        private boolean hasValue;
+        private boolean collecting;
+
+        SheetHandler(ReadOnlySharedStringsTable sharedStrings, RowSink sink) {
+            this.sharedStrings = sharedStrings;
+            this.sink = sink;
+        }
 
-        try (FileInputStream fileInputStream = new FileInputStream(file)) {
-            XSSFWorkbook workbook = new XSSFWorkbook(fileInputStream);
-            return Optional.of(workbook);
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            switch (localName) {
+                case "row":
+                    row = new ArrayList<>();
+                    break;
+                case "c":
+                    String reference = attributes.getValue("r");
+                    column = reference == null ? row.size() : new CellReference(reference).getCol();
+                    cellType = attributes.getValue("t");
+                    hasFormula = false;
+                    hasValue = false;
+                    value.setLength(0);
+                    break;
+                case "f":
+                    hasFormula = true;
+                    break;
+                case "v":
+                case "t":
+                    collecting = true;
+                    hasValue = true;
+                    break;
+                default:
+                    break;
+            }
+        }
 
-        } catch (IOException e) {
-            log.error("There was a problem accessing the file: {}", e);
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (collecting) value.append(ch, start, length);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            switch (localName) {
+                case "v":
+                case "t":
+                    collecting = false;
+                    break;
+                case "c":
+                    while (row.size() < column) row.add("");
+                    row.add(cellValue());
+                    break;
+                case "row":
+                    try {
+                        sink.accept(row);
+                    } catch (IOException e) {
+                        throw new SAXException(e);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private String cellValue() {
+            if (hasFormula || !hasValue) return "";
+            if (cellType == null || cellType.equals("n")) {
+                return toStringFormatFactory(Double.parseDouble(value.toString()));
+            }
+            if (cellType.equals("s")) {
+                return cleanSpaces(sharedStrings.getEntryAt(Integer.parseInt(value.toString().trim())));
+            }
+            if (cellType.equals("inlineStr")) {
+                return cleanSpaces(value.toString());
+            }
+            return "";
         }
-        return Optional.empty();
     }
 
     public ArrayList<ArrayList<String>> iterateThroughSheet(Sheet sheet) {
@@ -124,8 +237,4 @@ public class XlsxReader {
     private static String cleanSpaces(String stringToClean) {
         return stringToClean.trim();
     }
-
-    private Sheet getSheet(Optional<Workbook> workbook) {
-        return workbook.get().getSheetAt(0);
-    }
 }
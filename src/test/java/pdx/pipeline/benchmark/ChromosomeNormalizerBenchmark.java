@@ -0,0 +1,80 @@
+package pdx.pipeline.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import pdx.pipeline.ChromosomeNormalizer;
+import pdx.pipeline.Contigs;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Normalizes a mix of real-world chromosome spellings with the regex rules PDXLiftOver used to
+ * apply on every row and with {@link ChromosomeNormalizer}. Each operation resolves every
+ * spelling once; new String instances are used so hash codes are not already cached.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChromosomeNormalizerBenchmark {
+
+    private static final String[] SPELLINGS = {
+            "chr1", "1", "chr17", "17", "23", "24", "X", "chrY", "MT", "chrM", "chrUn_gl000220", "chr6_ssto_hap7"
+    };
+
+    private String[] chromosomes;
+
+    @Setup(Level.Iteration)
+    public void copySpellings() {
+        chromosomes = new String[SPELLINGS.length];
+        for (int i = 0; i < SPELLINGS.length; i++) chromosomes[i] = new String(SPELLINGS[i]);
+    }
+
+    @Benchmark
+    public void regex(Blackhole blackhole) {
+        for (String chromosome : chromosomes) blackhole.consume(Contigs.idOf(harmonizeChromoToChain(chromosome)));
+    }
+
+    @Benchmark
+    public void normalizer(Blackhole blackhole) {
+        for (String chromosome : chromosomes) blackhole.consume(ChromosomeNormalizer.contigIdOf(chromosome));
+    }
+
+    private static String harmonizeChromoToChain(String chromo){
+        String formatedChromo = chromo.trim();
+        String completeExpression = "^.+";
+
+        if(notChainFormat(chromo)) {
+            if (matchesMitoCase(chromo))
+                formatedChromo = chromo.replaceAll(completeExpression, "chrM");
+            if (isNumericSexChromo(chromo)){
+                formatedChromo = formatNumericSexChromoToChain(chromo);
+            }
+            else
+                formatedChromo = changeStringToChainFormat(chromo);
+        }
+        return formatedChromo;
+    }
+
+    private static String formatNumericSexChromoToChain(String chromo){
+        return chromo.matches("^.*23") ? "chrX" : "chrY";
+    }
+
+    private static boolean matchesMitoCase(String chromo){
+        return chromo.trim().matches("(?i)(chrmt|mt)");
+    }
+
+    private static String changeStringToChainFormat(String chromo){
+        return chromo.toUpperCase().replaceAll("(?i)^(?:chr)?([0-9]{1,2}|[xym]|Un).*$", "chr$1");
+    }
+
+    private static boolean isNumericSexChromo(String chromo){
+        return chromo.matches("^.*2[34]");
+    }
+
+    private static boolean notChainFormat(String chromo){
+        return ! chromo.matches("(?i)^chr([0-9]{1,2}|[XYM]|Un)$");
+    }
+}
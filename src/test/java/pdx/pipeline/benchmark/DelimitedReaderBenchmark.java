@@ -0,0 +1,89 @@
+package pdx.pipeline.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import pdx.pipeline.DelimitedReader;
+
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads a generated MUT style TSV with the line reader TsvUtils used to have
+ * (DataInputStream.readLine and String.split) and with {@link DelimitedReader}. Both touch the
+ * chromosome and start position of every row. The file is 1 GB by default, pass
+ * {@code -p sizeMb=64} for a quick run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class DelimitedReaderBenchmark {
+
+    private static final int CHROMO_COL = 2;
+    private static final int SEQ_START_COL = 3;
+
+    @Param({"1024"})
+    public int sizeMb;
+
+    private Path tsv;
+
+    @Setup(Level.Trial)
+    public void writeFile() throws IOException {
+        tsv = Files.createTempFile("reader-bench", ".tsv");
+        long target = sizeMb * 1024L * 1024L;
+        Random random = new Random(42);
+        long written = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(tsv, StandardCharsets.UTF_8)) {
+            String header = "datasource\tsample_id\tchromosome\tseq_start_position\tref_allele\talt_allele\tgenome_assembly\tplatform\n";
+            writer.write(header);
+            written += header.length();
+            while (written < target) {
+                String row = "provider\tsample" + random.nextInt(500) + "\tchr" + (1 + random.nextInt(22)) + "\t"
+                        + (1000000 + random.nextInt(100000000)) + "\tA\tT\tHg19\tMSK-impact\n";
+                writer.write(row);
+                written += row.length();
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(tsv);
+    }
+
+    @Benchmark
+    @SuppressWarnings("deprecation")
+    public void dataInputStreamSplit(Blackhole bh) throws IOException {
+        try (DataInputStream input = new DataInputStream(new FileInputStream(tsv.toFile()))) {
+            String line;
+            while ((line = input.readLine()) != null) {
+                String[] fields = line.split("\t");
+                ArrayList<String> row = new ArrayList<>();
+                for (String field : fields) row.add(field);
+                bh.consume(row.get(CHROMO_COL));
+                bh.consume(row.get(SEQ_START_COL));
+            }
+        }
+    }
+
+    @Benchmark
+    public void delimitedReader(Blackhole bh) throws IOException {
+        try (DelimitedReader reader = new DelimitedReader(tsv, '\t')) {
+            reader.next();
+            while (reader.next()) {
+                bh.consume(reader.field(CHROMO_COL).length());
+                bh.consume(reader.parseLong(SEQ_START_COL));
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package pdx.pipeline.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import pdx.pipeline.OmicHarmonizer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lifts MUT sheets of increasing size. The time per operation should grow linearly with the
+ * number of rows, i.e. each step of {@code rows} should cost roughly four times the previous one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class HarmonizerScalingBenchmark {
+
+    private static final String CHAINFILE = "src/main/resources/LiftOverResources/hg19ToHg38.over.chain.gz";
+    private static final int COLUMNS = 23;
+    private static final int CHROMO_COL = 20;
+    private static final int SEQ_START_COL = 21;
+
+    @Param({"10000", "40000", "160000"})
+    public int rows;
+
+    private OmicHarmonizer harmonizer;
+    private ArrayList<ArrayList<String>> sheet;
+    private String fileURI;
+
+    @Setup
+    public void setUp() throws IOException {
+        harmonizer = new OmicHarmonizer(CHAINFILE);
+        fileURI = Files.createTempDirectory("bench").resolve("bench_mut.tsv").toString();
+        sheet = new ArrayList<>();
+        ArrayList<String> headers = filledRow("HEADER");
+        headers.set(CHROMO_COL, "chromosome");
+        headers.set(SEQ_START_COL, "seq_start_position");
+        sheet.add(headers);
+        for (int i = 0; i < rows; i++) {
+            ArrayList<String> row = filledRow("10");
+            row.set(CHROMO_COL, "chr6");
+            row.set(SEQ_START_COL, String.valueOf(32188823 + (i % 1000)));
+            sheet.add(row);
+        }
+    }
+
+    @Benchmark
+    public ArrayList<ArrayList<String>> liftSheet() throws IOException {
+        return harmonizer.runLiftOver(sheet, fileURI, OmicHarmonizer.OMIC.MUT);
+    }
+
+    private static ArrayList<String> filledRow(String filler) {
+        ArrayList<String> row = new ArrayList<>();
+        for (int i = 0; i < COLUMNS; i++) row.add(filler);
+        return row;
+    }
+}
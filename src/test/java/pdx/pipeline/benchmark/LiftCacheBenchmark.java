@@ -0,0 +1,66 @@
+package pdx.pipeline.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import pdx.pipeline.LiftCache;
+import pdx.pipeline.PDXLiftOver;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lifts a release worth of MUT rows where most rows are one of a few thousand hotspot variants,
+ * with and without a {@link LiftCache} in front of the chain index.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LiftCacheBenchmark {
+
+    private static final String CHAINFILE = "src/main/resources/LiftOverResources/hg19ToHg38.over.chain.gz";
+    private static final int ROWS = 1000000;
+    private static final int HOTSPOTS = 5000;
+
+    @Param({"0", "100000"})
+    public int cacheSize;
+
+    private PDXLiftOver lifter;
+    private int[] contigIds = new int[ROWS];
+    private long[] starts = new long[ROWS];
+    private int[] liftedContigIds = new int[ROWS];
+    private long[] liftedStarts = new long[ROWS];
+    private long[] liftedEnds = new long[ROWS];
+    private byte[] status = new byte[ROWS];
+
+    @Setup
+    public void setUp() {
+        lifter = new PDXLiftOver();
+        lifter.setChainFileURI(CHAINFILE);
+        if (cacheSize > 0) lifter.setLiftCache(new LiftCache(lifter.getChainIndex(), cacheSize));
+        Random random = new Random(42);
+        int[] hotspotContigs = new int[HOTSPOTS];
+        long[] hotspotStarts = new long[HOTSPOTS];
+        for (int i = 0; i < HOTSPOTS; i++) {
+            hotspotContigs[i] = lifter.contigIdOf(String.valueOf(1 + random.nextInt(22)));
+            hotspotStarts[i] = 1000000 + random.nextInt(100000000);
+        }
+        for (int i = 0; i < ROWS; i++) {
+            if (random.nextInt(10) < 8) {
+                int hotspot = (int) Math.min(HOTSPOTS - 1, Math.abs(random.nextGaussian()) * HOTSPOTS / 3);
+                contigIds[i] = hotspotContigs[hotspot];
+                starts[i] = hotspotStarts[hotspot];
+            } else {
+                contigIds[i] = lifter.contigIdOf(String.valueOf(1 + random.nextInt(22)));
+                starts[i] = 1000000 + random.nextInt(100000000);
+            }
+        }
+    }
+
+    @Benchmark
+    public byte[] lift() {
+        lifter.liftOverBatch(contigIds, starts, starts, 0, ROWS, liftedContigIds, liftedStarts, liftedEnds, status);
+        return status;
+    }
+}
@@ -0,0 +1,95 @@
+package pdx.pipeline.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import pdx.pipeline.PDXLiftOver;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lifts a coordinate-sorted dense panel (clusters of nearby positions on every chromosome) with
+ * a lookup per row and with a sweep, in 2048 row partitions as OmicHarmonizer does. Set
+ * {@code -p sorted=false} to see the cost of sorting each partition first.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SweepBenchmark {
+
+    private static final String CHAINFILE = "src/main/resources/LiftOverResources/hg19ToHg38.over.chain.gz";
+    private static final int PARTITION_SIZE = 2048;
+
+    @Param({"1000000"})
+    public int rows;
+
+    @Param({"true"})
+    public boolean sorted;
+
+    private PDXLiftOver lifter;
+    private int[] contigIds;
+    private long[] starts;
+    private long[] ends;
+    private int[] liftedContigIds;
+    private long[] liftedStarts;
+    private long[] liftedEnds;
+    private byte[] status;
+
+    @Setup
+    public void setUp() {
+        lifter = new PDXLiftOver();
+        lifter.setChainFileURI(CHAINFILE);
+        contigIds = new int[rows];
+        starts = new long[rows];
+        ends = new long[rows];
+        liftedContigIds = new int[rows];
+        liftedStarts = new long[rows];
+        liftedEnds = new long[rows];
+        status = new byte[rows];
+
+        Random random = new Random(42);
+        int perContig = rows / 22 + 1;
+        for (int i = 0; i < rows; i++) {
+            int contig = i / perContig;
+            if (i % perContig == 0) starts[i] = 1000000;
+            else if (random.nextInt(50) == 0) starts[i] = starts[i - 1] + random.nextInt(2000000);
+            else starts[i] = starts[i - 1] + random.nextInt(300);
+            contigIds[i] = lifter.contigIdOf(String.valueOf(contig + 1));
+            ends[i] = starts[i];
+        }
+        if (!sorted) {
+            for (int i = rows - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int contig = contigIds[i];
+                contigIds[i] = contigIds[j];
+                contigIds[j] = contig;
+                long start = starts[i];
+                starts[i] = starts[j];
+                starts[j] = start;
+                ends[i] = starts[i];
+                ends[j] = starts[j];
+            }
+        }
+        lifter.getChainIndex();
+    }
+
+    @Benchmark
+    public byte[] lookupPerRow() {
+        for (int from = 0; from < rows; from += PARTITION_SIZE) {
+            lifter.liftOverBatch(contigIds, starts, ends, from, Math.min(from + PARTITION_SIZE, rows),
+                    liftedContigIds, liftedStarts, liftedEnds, status);
+        }
+        return status;
+    }
+
+    @Benchmark
+    public byte[] sweep() {
+        for (int from = 0; from < rows; from += PARTITION_SIZE) {
+            lifter.liftOverSweep(contigIds, starts, ends, from, Math.min(from + PARTITION_SIZE, rows),
+                    liftedContigIds, liftedStarts, liftedEnds, status);
+        }
+        return status;
+    }
+}
@@ -0,0 +1,130 @@
+package pdx.pipeline.preload;
+
+import htsjdk.samtools.util.Interval;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import pdx.pipeline.ChainIndex;
+import pdx.pipeline.ChainIndexCache;
+import pdx.pipeline.Digests;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.zip.GZIPOutputStream;
+
+public class ChainIndexCacheTests {
+
+    private static final String CHAINFILE = "./src/main/resources/LiftOverResources/hg19ToHg38.over.chain.gz";
+
+    private Path chain;
+    private Path cache;
+
+    @Before
+    public void copyChainFile() throws IOException {
+        chain = Files.createTempDirectory("chaincache").resolve("hg19ToHg38.over.chain.gz");
+        Files.copy(Paths.get(CHAINFILE), chain);
+        cache = chain.resolveSibling("hg19ToHg38.over.chain.gz.idx");
+    }
+
+    @Test
+    public void Given_noCache_When_chainIsLoaded_Then_writeCacheAndLiftTheSameFromIt() {
+
+        //given
+        Interval interval = new Interval("chr6", 32188823, 32188823);
+
+        //when
+        ChainIndex fromText = ChainIndex.load(chain.toString());
+        ChainIndex fromCache = ChainIndex.load(chain.toString());
+
+        //then
+        Assert.assertFalse(fromText.isFromCache());
+        Assert.assertTrue(Files.exists(cache));
+        Assert.assertTrue(fromCache.isFromCache());
+        Assert.assertEquals(fromText.getChainCount(), fromCache.getChainCount());
+        Assert.assertEquals(fromText.getBlockCount(), fromCache.getBlockCount());
+        Assert.assertEquals(fromText.liftOver(interval), fromCache.liftOver(interval));
+        Assert.assertEquals(32221046, fromCache.liftOver(interval).getStart());
+    }
+
+    @Test
+    public void Given_chainFileChanged_When_chainIsLoaded_Then_ignoreAndRebuildCache() throws IOException {
+
+        //given
+        ChainIndexCache.compile(chain.toString());
+        long compiledSize = Files.size(cache);
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(chain))) {
+            out.write("chain 1 chr1 100 + 0 10 chr1 100 + 0 10 1\n10\n".getBytes(StandardCharsets.US_ASCII));
+        }
+
+        //when
+        ChainIndex index = ChainIndex.load(chain.toString());
+
+        //then
+        Assert.assertFalse(index.isFromCache());
+        Assert.assertEquals(1, index.getChainCount());
+        Assert.assertNotEquals(compiledSize, Files.size(cache));
+        Assert.assertTrue(ChainIndex.load(chain.toString()).isFromCache());
+    }
+
+    @Test
+    public void Given_currentCache_When_chainIsOnlyTouched_Then_keepUsingTheCache() throws IOException {
+
+        //given
+        ChainIndexCache.compile(chain.toString());
+        byte[] sha256 = Digests.sha256(chain);
+
+        //when
+        Files.setLastModifiedTime(chain, FileTime.fromMillis(Files.getLastModifiedTime(chain).toMillis() - 60000));
+        ChainIndex touched = ChainIndex.load(chain.toString());
+
+        //then
+        Assert.assertTrue(touched.isFromCache());
+        Assert.assertArrayEquals(sha256, touched.getChainDigest());
+    }
+
+    @Test
+    public void Given_chainReplacedWithSameSizeAndTime_When_chainIsLoaded_Then_ignoreCacheAndUseTheNewChain() throws IOException {
+
+        //given
+        Path textChain = chain.resolveSibling("test.over.chain");
+        Files.write(textChain, "chain 1 chr1 100 + 0 10 chr1 100 + 0 10 1\n10\n".getBytes(StandardCharsets.US_ASCII));
+        ChainIndexCache.compile(textChain.toString());
+        FileTime modified = Files.getLastModifiedTime(textChain);
+        Files.write(textChain, "chain 1 chr1 100 + 0 10 chr2 100 + 0 10 1\n10\n".getBytes(StandardCharsets.US_ASCII));
+        Files.setLastModifiedTime(textChain, modified);
+
+        //when
+        ChainIndex index = ChainIndex.load(textChain.toString());
+
+        //then
+        Assert.assertFalse(index.isFromCache());
+        Assert.assertArrayEquals(Digests.sha256(textChain), index.getChainDigest());
+        Assert.assertEquals("chr2", index.liftOver(new Interval("chr1", 5, 5)).getContig());
+    }
+
+    @Test
+    public void Given_corruptCache_When_chainIsLoaded_Then_fallBackToText() throws IOException {
+
+        //given
+        ChainIndexCache.compile(chain.toString());
+        try (RandomAccessFile file = new RandomAccessFile(cache.toFile(), "rw")) {
+            file.seek(file.length() - 100);
+            int value = file.read();
+            file.seek(file.length() - 100);
+            file.write(~value);
+        }
+
+        //when
+        ChainIndex index = ChainIndex.load(chain.toString());
+
+        //then
+        Assert.assertFalse(index.isFromCache());
+        Assert.assertEquals(32221046, index.liftOver(new Interval("chr6", 32188823, 32188823)).getStart());
+    }
+}
@@ -0,0 +1,40 @@
+package pdx.pipeline.preload;
+
+import htsjdk.samtools.util.Interval;
+import org.junit.Assert;
+import org.junit.Test;
+import pdx.pipeline.ChainIndex;
+import pdx.pipeline.ChainIndexRegistry;
+
+public class ChainIndexRegistryTests {
+
+    private static final String CHAINFILE = "./src/main/resources/LiftOverResources/hg19ToHg38.over.chain.gz";
+    private static final String CHAINFILE_RELATIVE = "src/main/resources/LiftOverResources/hg19ToHg38.over.chain.gz";
+
+    @Test
+    public void Given_sameChainFile_When_registryIsCalledTwice_Then_returnSameIndex(){
+
+        //when
+        ChainIndex first = ChainIndexRegistry.get(CHAINFILE);
+        ChainIndex second = ChainIndexRegistry.get(CHAINFILE_RELATIVE);
+
+        //then
+        Assert.assertSame(first, second);
+        Assert.assertTrue(ChainIndexRegistry.isLoaded(CHAINFILE));
+        Assert.assertTrue(first.getLoadTimeMillis() >= 0);
+    }
+
+    @Test
+    public void Given_knownMutation_When_sharedIndexLifts_Then_returnHg38Coordinates(){
+
+        //given
+        ChainIndex index = ChainIndexRegistry.get(CHAINFILE);
+
+        //when
+        Interval lifted = index.liftOver(new Interval("chr6", 32188823, 32188823));
+
+        //then
+        Assert.assertEquals("chr6", lifted.getContig());
+        Assert.assertEquals(32221046, lifted.getStart());
+    }
+}
@@ -0,0 +1,164 @@
+package pdx.pipeline.preload;
+
+import htsjdk.samtools.liftover.LiftOver;
+import htsjdk.samtools.util.IOUtil;
+import htsjdk.samtools.util.Interval;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import pdx.pipeline.ChainIndex;
+import pdx.pipeline.ChainIndexRegistry;
+import pdx.pipeline.Contigs;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class ChainIndexTests {
+
+    private static final String CHAINFILE = "./src/main/resources/LiftOverResources/hg19ToHg38.over.chain.gz";
+    private static final int STRIDE = 99991;
+
+    private static LiftOver htsjdkLiftOver;
+    private static ChainIndex chainIndex;
+
+    @BeforeClass
+    public static void loadChains() {
+        htsjdkLiftOver = new LiftOver(new File(CHAINFILE));
+        htsjdkLiftOver.setShouldLogFailedIntervalsBelowThreshold(false);
+        chainIndex = ChainIndexRegistry.get(CHAINFILE);
+    }
+
+    @Test
+    public void Given_hg19Strides_When_lifted_Then_matchHtsjdk() throws IOException {
+
+        //given
+        Map<String, Integer> contigSizes = new LinkedHashMap<>();
+        try (BufferedReader reader = IOUtil.openFileForBufferedReading(new File(CHAINFILE))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("chain")) {
+                    String[] fields = line.split("\\s+");
+                    contigSizes.put(fields[2], Integer.parseInt(fields[3]));
+                }
+            }
+        }
+
+        //when
+        int compared = 0;
+        for (Map.Entry<String, Integer> contig : contigSizes.entrySet()) {
+            for (int position = 1; position <= contig.getValue(); position += STRIDE) {
+
+                //then
+                assertSameLift(new Interval(contig.getKey(), position, position));
+                assertSameLift(new Interval(contig.getKey(), position, Math.min(position + 499, contig.getValue())));
+                compared += 2;
+            }
+        }
+        Assert.assertTrue(compared > 60000);
+    }
+
+    @Test
+    public void Given_everyBlockBoundary_When_lifted_Then_matchHtsjdk() throws IOException {
+
+        //given
+        int compared = 0;
+        try (BufferedReader reader = IOUtil.openFileForBufferedReading(new File(CHAINFILE))) {
+            String line;
+            String contig = null;
+            int fromPosition = 0;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.trim().split("\\s+");
+                if (fields[0].isEmpty()) continue;
+                if (fields[0].equals("chain")) {
+                    contig = fields[2];
+                    fromPosition = Integer.parseInt(fields[5]);
+                    continue;
+                }
+                int blockStart = fromPosition + 1;
+                int blockEnd = fromPosition + Integer.parseInt(fields[0]);
+
+                //when
+                for (int position : new int[]{blockStart - 1, blockStart, blockEnd, blockEnd + 1}) {
+                    if (position < 1) continue;
+
+                    //then
+                    assertSameLift(new Interval(contig, position, position));
+                    compared++;
+                }
+                assertSameLift(new Interval(contig, Math.max(1, blockEnd - 20), blockEnd + 1));
+                assertSameLift(new Interval(contig, Math.max(1, blockStart - 1), blockStart + 40));
+                if (fields.length == 3) fromPosition += Integer.parseInt(fields[0]) + Integer.parseInt(fields[1]);
+            }
+        }
+        Assert.assertTrue(compared > 200000);
+    }
+
+    @Test
+    public void Given_chainOnOppositeStrand_When_lifted_Then_flipToTargetStrand() throws IOException {
+
+        //given
+        String[] header = null;
+        try (BufferedReader reader = IOUtil.openFileForBufferedReading(new File(CHAINFILE))) {
+            String line;
+            while (header == null && (line = reader.readLine()) != null) {
+                if (line.startsWith("chain") && line.split("\\s+")[9].equals("-")) header = line.split("\\s+");
+            }
+        }
+        int position = Integer.parseInt(header[5]) + 1;
+        int[] lifted = new int[ChainIndex.RESULT_SIZE];
+
+        //when
+        boolean mapped = chainIndex.liftOver(Contigs.idOf(header[2]), position, position, lifted);
+
+        //then
+        Assert.assertTrue(mapped);
+        Assert.assertEquals(1, lifted[ChainIndex.NEGATIVE_STRAND]);
+        Assert.assertEquals(Integer.parseInt(header[8]) - Integer.parseInt(header[10]), lifted[ChainIndex.END]);
+        assertSameLift(new Interval(header[2], position, position));
+    }
+
+    @Test
+    public void Given_sortedPositionsWithStepsBack_When_sweepLifts_Then_matchRandomLookups() {
+
+        //given
+        ChainIndex.Sweep sweep = chainIndex.newSweep();
+        int[] expected = new int[ChainIndex.RESULT_SIZE];
+        int[] actual = new int[ChainIndex.RESULT_SIZE];
+        int compared = 0;
+
+        for (String contig : new String[]{"chr1", "chr2", "chr1", "chrX", "chr6_apd_hap1"}) {
+            int contigId = Contigs.idOf(contig);
+            for (int position = 1; position < 250000000; position += position % 3 == 0 ? 997 : 4999) {
+                int start = position % 11 == 0 ? Math.max(1, position - 200000) : position;
+                int end = start + position % 700;
+
+                //when
+                boolean expectedMapped = chainIndex.liftOver(contigId, start, end, expected);
+                boolean mapped = sweep.liftOver(contigId, start, end, actual);
+
+                //then
+                Assert.assertEquals(contig + ":" + start + "-" + end, expectedMapped, mapped);
+                if (mapped) Assert.assertArrayEquals(contig + ":" + start + "-" + end, expected, actual);
+                compared++;
+            }
+        }
+        Assert.assertTrue(compared > 100000);
+    }
+
+    private void assertSameLift(Interval interval) {
+        Interval expected = htsjdkLiftOver.liftOver(interval);
+        Interval actual = chainIndex.liftOver(interval);
+        if (expected == null) {
+            Assert.assertNull(interval.toString(), actual);
+            return;
+        }
+        Assert.assertNotNull(interval.toString(), actual);
+        Assert.assertEquals(interval.toString(), expected.getContig(), actual.getContig());
+        Assert.assertEquals(interval.toString(), expected.getStart(), actual.getStart());
+        Assert.assertEquals(interval.toString(), expected.getEnd(), actual.getEnd());
+        Assert.assertEquals(interval.toString(), expected.isNegativeStrand(), actual.isNegativeStrand());
+    }
+}
@@ -0,0 +1,81 @@
+package pdx.pipeline.preload;
+
+import org.junit.Assert;
+import org.junit.Test;
+import pdx.pipeline.ChromosomeNormalizer;
+import pdx.pipeline.Contigs;
+
+public class ChromosomeNormalizerTests {
+
+    @Test
+    public void Given_providerSpellings_When_toChainNameIsCalled_Then_returnChainFormat() {
+
+        //given
+        String[] spellings = {"chr1", "1", "chr1 ", "x", "chrY", "23", "24", "MT", "chrMT", "m", "7", "chr9"};
+        String[] expected = {"chr1", "chr1", "chr1", "chrX", "chrY", "chrX", "chrY", "chrM", "chrM", "chrM", "chr7", "chr9"};
+
+        for (int i = 0; i < spellings.length; i++) {
+
+            //when
+            String chainName = ChromosomeNormalizer.toChainName(spellings[i]);
+
+            //then
+            Assert.assertEquals(spellings[i], expected[i], chainName);
+        }
+    }
+
+    @Test
+    public void Given_twoSpellingsOfOneContig_When_normalized_Then_shareTheSameInstance() {
+
+        //given
+        String numeric = new String("17");
+        String prefixed = new String("chr17");
+
+        //when
+        String first = ChromosomeNormalizer.toChainName(numeric);
+        String second = ChromosomeNormalizer.toChainName(prefixed);
+
+        //then
+        Assert.assertSame(first, second);
+        Assert.assertEquals(Contigs.idOf("chr17"), ChromosomeNormalizer.contigIdOf(numeric));
+    }
+
+    @Test
+    public void Given_emptyOrNullChromosome_When_contigIdOfIsCalled_Then_returnUnknown() {
+
+        //when
+        int empty = ChromosomeNormalizer.contigIdOf("");
+        int missing = ChromosomeNormalizer.contigIdOf(null);
+
+        //then
+        Assert.assertEquals(Contigs.UNKNOWN, empty);
+        Assert.assertEquals(Contigs.UNKNOWN, missing);
+    }
+
+    @Test
+    public void Given_manyUnseenSpellings_When_normalized_Then_cacheStaysBounded() {
+
+        //when
+        for (int i = 0; i < 10000; i++) ChromosomeNormalizer.contigIdOf("chr1_gl" + i + "_random");
+
+        //then
+        Assert.assertTrue(ChromosomeNormalizer.getCacheSize() <= 4096);
+        Assert.assertEquals("chr1", ChromosomeNormalizer.toChainName("chr1_gl9999_random"));
+    }
+
+    @Test
+    public void Given_unrecognisedSpellings_When_normalized_Then_noContigIsRegistered() {
+
+        //given
+        int contigs = Contigs.size();
+
+        //when
+        int na = ChromosomeNormalizer.contigIdOf("NA");
+        for (int i = 0; i < 100; i++) ChromosomeNormalizer.contigIdOf("FOO" + i);
+
+        //then
+        Assert.assertEquals(Contigs.UNKNOWN, na);
+        Assert.assertEquals(contigs, Contigs.size());
+        Assert.assertNull(ChromosomeNormalizer.toChainName("FOO7"));
+    }
+}
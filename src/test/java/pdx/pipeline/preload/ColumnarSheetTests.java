@@ -0,0 +1,160 @@
+package pdx.pipeline.preload;
+
+import org.junit.Assert;
+import org.junit.Test;
+import pdx.pipeline.ColumnarSheet;
+import pdx.pipeline.DelimitedReader;
+import pdx.pipeline.TsvUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+
+public class ColumnarSheetTests {
+
+    private static final String TSV = "chromosome\tseq_start_position\tnote\n"
+            + "chr6\t32188823\tfirst é\n"
+            + "7\t\n"
+            + "X\tabc\tthird\textra\n";
+
+    private ColumnarSheet readTsv(String content) throws IOException {
+        Path file = Files.createTempFile("columnar", ".tsv");
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        ColumnarSheet.Builder builder = new ColumnarSheet.Builder()
+                .parseLongs("SEQ_START_POSITION")
+                .mapInts("chromosome", String::length);
+        try (DelimitedReader reader = new DelimitedReader(file, '\t')) {
+            while (reader.next()) builder.addRow(reader);
+        }
+        return builder.build();
+    }
+
+    @Test
+    public void Given_delimitedFile_When_readIntoColumns_Then_cellsAndParsedColumnsMatchTheText() throws IOException {
+
+        //when
+        ColumnarSheet sheet = readTsv(TSV);
+
+        //then
+        Assert.assertEquals(4, sheet.getRowCount());
+        Assert.assertEquals(new ArrayList<>(Arrays.asList("chr6", "32188823", "first é")), sheet.getRow(1));
+        Assert.assertEquals(new ArrayList<>(Arrays.asList("7", "")), sheet.getRow(2));
+        Assert.assertEquals(4, sheet.getWidth(3));
+        Assert.assertEquals(1, sheet.columnOf("Seq_Start_Position"));
+        Assert.assertEquals(-1, sheet.columnOf("seq_end_position"));
+        long[] starts = sheet.getLongColumn(1);
+        Assert.assertEquals(32188823, starts[1]);
+        Assert.assertEquals(-1, starts[2]);
+        Assert.assertEquals(ColumnarSheet.NOT_A_NUMBER, starts[3]);
+        Assert.assertEquals(Arrays.asList(4, 1, 1), Arrays.asList(sheet.getIntColumn(0)[1], sheet.getIntColumn(0)[2], sheet.getIntColumn(0)[3]));
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void Given_cellThatIsNotANumber_When_getLongIsCalled_Then_throwLikeParseLong() throws IOException {
+
+        //when
+        readTsv(TSV).getLong(3, 1);
+    }
+
+    @Test
+    public void Given_listRows_When_builtIntoColumns_Then_sameAsReadingTheFile() throws IOException {
+
+        //given
+        ColumnarSheet fromFile = readTsv(TSV);
+        ColumnarSheet.Builder builder = new ColumnarSheet.Builder().parseLongs("seq_start_position");
+
+        //when
+        for (int row = 0; row < fromFile.getRowCount(); row++) builder.accept(fromFile.getRow(row));
+        ColumnarSheet fromLists = builder.build();
+
+        //then
+        for (int row = 0; row < fromFile.getRowCount(); row++) {
+            Assert.assertEquals(fromFile.getRow(row), fromLists.getRow(row));
+            Assert.assertEquals(fromFile.getLongColumn(1)[row], fromLists.getLongColumn(1)[row]);
+        }
+    }
+
+    @Test
+    public void Given_selectionAndOverlays_When_writeTSVIsCalled_Then_writeSelectedRowsWithOverlaidValues() throws IOException {
+
+        //given
+        ColumnarSheet sheet = readTsv(TSV);
+        BitSet selected = new BitSet();
+        selected.set(1);
+        selected.set(3);
+        sheet.select(selected);
+        sheet.overlay(0, new String[]{null, "chr6", null, "chrX"});
+        sheet.overlay(1, new long[]{0, 32221046, 0, -5});
+        Path out = Files.createTempFile("columnar", ".lfted");
+
+        //when
+        new TsvUtils().writeTSV(sheet, out.toString());
+
+        //then
+        Assert.assertEquals(2, sheet.getSelectedCount());
+        Assert.assertEquals("chromosome\tseq_start_position\tnote\n"
+                        + "chr6\t32221046\tfirst é\n"
+                        + "chrX\t-5\tthird\textra\n",
+                new String(Files.readAllBytes(out), StandardCharsets.UTF_8));
+        Assert.assertEquals("7", sheet.getString(2, 0));
+    }
+
+    @Test
+    public void Given_repetitiveAndUniqueColumns_When_readIntoColumns_Then_onlyRepeatedValuesAreStoredOnce() throws IOException {
+
+        //given
+        int rows = 3 * ColumnarSheet.MAX_DICTIONARY_SIZE;
+        StringBuilder tsv = new StringBuilder("platform\tseq_start_position\tsample_id\n");
+        for (int row = 0; row < rows; row++) {
+            tsv.append(row % 2 == 0 ? "MSK-impact" : "TruSeq").append('\t').append(1000 + row).append('\t').append("sample").append(row % 400);
+            if (row % 3 == 0) tsv.append("\textra");
+            tsv.append('\n');
+        }
+
+        //when
+        ColumnarSheet sheet = readTsv(tsv.toString());
+        Path out = Files.createTempFile("columnar", ".tsv");
+        new TsvUtils().writeTSV(sheet, out.toString());
+
+        //then
+        Assert.assertEquals(2, sheet.getDictionarySize(0));
+        Assert.assertEquals(ColumnarSheet.MAX_DICTIONARY_SIZE, sheet.getDictionarySize(1));
+        Assert.assertEquals(400, sheet.getDictionarySize(2));
+        Assert.assertSame(sheet.getString(1, 0), sheet.getString(3, 0));
+        Assert.assertSame(sheet.getString(5, 2), sheet.getString(405, 2));
+        Assert.assertEquals("4071", sheet.getString(3072, 1));
+        Assert.assertEquals(new ArrayList<>(Arrays.asList("TruSeq", "4071", "sample271")), sheet.getRow(3072));
+        Assert.assertEquals(5, sheet.getCellLength(1, 3));
+        Assert.assertEquals(10, sheet.getCellLength(3, 0));
+        Assert.assertEquals(tsv.toString(), new String(Files.readAllBytes(out), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void Given_longPooledCellsBetweenCodedCells_When_readIntoColumns_Then_eachCellKeepsItsOwnLength() throws IOException {
+
+        //given
+        String note = String.join("", Collections.nCopies(300, "é"));
+        StringBuilder tsv = new StringBuilder("platform\tnote\tsample_id\tcomment\n");
+        for (int row = 0; row < 10; row++) {
+            tsv.append("TruSeq\t").append(note).append(row).append("\tsample1\t").append(row % 2 == 0 ? "" : "c" + row).append('\n');
+        }
+
+        //when
+        ColumnarSheet sheet = readTsv(tsv.toString());
+        Path out = Files.createTempFile("columnar", ".tsv");
+        new TsvUtils().writeTSV(sheet, out.toString());
+
+        //then
+        Assert.assertEquals(1, sheet.getDictionarySize(2));
+        Assert.assertEquals(601, sheet.getCellLength(4, 1));
+        Assert.assertEquals(note + "3", sheet.getString(4, 1));
+        Assert.assertEquals("c3", sheet.getString(4, 3));
+        Assert.assertEquals(0, sheet.getCellLength(5, 3));
+        Assert.assertEquals(tsv.toString(), new String(Files.readAllBytes(out), StandardCharsets.UTF_8));
+    }
+}
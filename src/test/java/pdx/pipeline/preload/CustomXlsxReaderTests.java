@@ -10,6 +10,10 @@ import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -87,6 +91,34 @@ public class CustomXlsxReaderTests {
         Assert.assertEquals(expectedSize, actualList.get(1).size());
     }
 
+    @Test
+    public void Given_mixedCells_When_streamFirstSheetIsCalled_Then_returnSameRowsAsIterateThroughSheet() throws IOException {
+
+        //given init()
+        fillRowWithCharacters(secondDataRow, "  chr6 ");
+        thirdDataRow.createCell(0).setCellValue(32188823);
+        thirdDataRow.createCell(1).setCellValue(1.5);
+        thirdDataRow.createCell(2).setCellValue(12345678901234.0);
+        thirdDataRow.createCell(4).setCellValue(true);
+        thirdDataRow.createCell(5).setCellFormula("A3+1");
+        thirdDataRow.createCell(7);
+        thirdDataRow.createCell(8).setCellValue(multipleSpaces);
+        Path xlsx = Files.createTempFile("stream", ".xlsx");
+        xlsx.toFile().deleteOnExit();
+        try (OutputStream out = Files.newOutputStream(xlsx)) {
+            workbook.write(out);
+        }
+        ArrayList<ArrayList<String>> streamed = new ArrayList<>();
+
+        //When
+        xlsxReader.streamFirstSheet(xlsx.toFile(), streamed::add);
+
+        //Then
+        Assert.assertEquals(xlsxReader.iterateThroughSheet(sheet), streamed);
+        Assert.assertEquals("32188823", streamed.get(2).get(0));
+        Assert.assertEquals(streamed, xlsxReader.readFirstSheet(xlsx.toFile()));
+    }
+
     private void fillRowWithCharacters(Row row, String fill){
 
         for(int i = 0; i < expectedSize; i++){
@@ -0,0 +1,100 @@
+package pdx.pipeline.preload;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import pdx.pipeline.DelimitedReader;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class DelimitedReaderTests {
+
+    private Path tsv;
+
+    @Before
+    public void init() throws IOException {
+        tsv = Files.createTempFile("reader", ".tsv");
+        tsv.toFile().deleteOnExit();
+    }
+
+    @Test
+    public void Given_rowsLongerThanBuffer_When_readerIsCalled_Then_returnEveryFieldIncludingTrailingBlanks() throws IOException {
+
+        //given
+        write("chromosome\tseq_start_position\tref\r\n6\t32188823\t\t\nchr1\t\t" + repeat('A', 100) + "\n\t\n");
+
+        //when
+        List<List<String>> rows = readAll(8);
+
+        //then
+        Assert.assertEquals(4, rows.size());
+        Assert.assertEquals(Arrays.asList("chromosome", "seq_start_position", "ref"), rows.get(0));
+        Assert.assertEquals(Arrays.asList("6", "32188823", "", ""), rows.get(1));
+        Assert.assertEquals(Arrays.asList("chr1", "", repeat('A', 100)), rows.get(2));
+        Assert.assertEquals(Arrays.asList("", ""), rows.get(3));
+    }
+
+    @Test
+    public void Given_multiByteCharacters_When_fieldIsRead_Then_decodeUtf8() throws IOException {
+
+        //given
+        write("größe\tµ\tplain\nlast");
+
+        //when
+        List<List<String>> rows = readAll(4);
+
+        //then
+        Assert.assertEquals(Arrays.asList("größe", "µ", "plain"), rows.get(0));
+        Assert.assertEquals(Arrays.asList("last"), rows.get(1));
+    }
+
+    @Test
+    public void Given_coordinateFields_When_parseLongIsCalled_Then_parseWithoutDecoding() throws IOException {
+
+        //given
+        write("32188823\t  \t-5\tX12\n");
+
+        try (DelimitedReader reader = new DelimitedReader(tsv, '\t')) {
+            //when
+            Assert.assertTrue(reader.next());
+
+            //then
+            Assert.assertEquals(32188823L, reader.parseLong(0));
+            Assert.assertEquals(-1L, reader.parseLong(1));
+            Assert.assertEquals(-5L, reader.parseLong(2));
+            try {
+                reader.parseLong(3);
+                Assert.fail("Expected NumberFormatException");
+            } catch (NumberFormatException expected) {
+                Assert.assertTrue(expected.getMessage().contains("X12"));
+            }
+            Assert.assertEquals("X12", reader.field(3).toString());
+            Assert.assertEquals('1', reader.field(3).charAt(1));
+            Assert.assertFalse(reader.next());
+        }
+    }
+
+    private List<List<String>> readAll(int bufferSize) throws IOException {
+        List<List<String>> rows = new ArrayList<>();
+        try (DelimitedReader reader = new DelimitedReader(tsv, '\t', bufferSize)) {
+            while (reader.next()) rows.add(reader.toList());
+        }
+        return rows;
+    }
+
+    private void write(String content) throws IOException {
+        Files.write(tsv, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String repeat(char c, int times) {
+        char[] chars = new char[times];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+}
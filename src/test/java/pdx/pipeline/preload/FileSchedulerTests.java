@@ -0,0 +1,82 @@
+package pdx.pipeline.preload;
+
+import org.junit.Assert;
+import org.junit.Test;
+import pdx.pipeline.FileScheduler;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class FileSchedulerTests {
+
+    @Test
+    public void Given_oneFailingFile_When_schedulerRuns_Then_otherFilesAreStillLifted() throws InterruptedException {
+
+        //given
+        Set<String> processed = ConcurrentHashMap.newKeySet();
+        FileScheduler scheduler = new FileScheduler(3, f -> {
+            if (f.getName().equals("bad_mut.tsv")) throw new IOException("unreadable");
+            processed.add(f.getName());
+            return 10;
+        });
+
+        //when
+        for (int i = 0; i < 20; i++) scheduler.submit(new File("test" + i + "_mut.tsv"));
+        scheduler.submit(new File("bad_mut.tsv"));
+        FileScheduler.Summary summary = scheduler.awaitCompletion();
+
+        //then
+        Assert.assertEquals(20, processed.size());
+        Assert.assertEquals(20, summary.getFilesLifted());
+        Assert.assertEquals(1, summary.getFilesFailed());
+        Assert.assertEquals(200, summary.getRows());
+        Assert.assertTrue(summary.getRowsPerSecond() > 0);
+    }
+
+    @Test
+    public void Given_fullWorkQueue_When_moreFilesAreSubmitted_Then_submitterWaitsAndNeverLiftsAFile() throws InterruptedException {
+
+        //given
+        Set<String> liftingThreads = ConcurrentHashMap.newKeySet();
+        FileScheduler scheduler = new FileScheduler(1, f -> {
+            liftingThreads.add(Thread.currentThread().getName());
+            Thread.sleep(5);
+            return 1;
+        });
+
+        //when
+        for (int i = 0; i < 20; i++) scheduler.submit(new File("test" + i + "_mut.tsv"));
+        FileScheduler.Summary summary = scheduler.awaitCompletion();
+
+        //then
+        Assert.assertEquals(20, summary.getFilesLifted());
+        Assert.assertFalse(liftingThreads.contains(Thread.currentThread().getName()));
+        Assert.assertEquals(1, liftingThreads.size());
+    }
+
+    @Test
+    public void Given_perFileThreads_When_filesAreSubmitted_Then_noMoreThanMaxOpenFilesRunAtOnce() throws InterruptedException {
+
+        //given
+        AtomicInteger open = new AtomicInteger();
+        AtomicInteger mostOpen = new AtomicInteger();
+        FileScheduler scheduler = FileScheduler.perFileThreads(4, f -> {
+            mostOpen.accumulateAndGet(open.incrementAndGet(), Math::max);
+            Thread.sleep(5);
+            open.decrementAndGet();
+            return 1;
+        });
+
+        //when
+        for (int i = 0; i < 40; i++) scheduler.submit(new File("test" + i + "_cna.tsv"));
+        FileScheduler.Summary summary = scheduler.awaitCompletion();
+
+        //then
+        Assert.assertEquals(40, summary.getFilesLifted());
+        Assert.assertEquals(40, summary.getRows());
+        Assert.assertTrue(mostOpen.get() <= 4);
+    }
+}
@@ -0,0 +1,37 @@
+package pdx.pipeline.preload;
+
+import org.junit.Assert;
+import org.junit.Test;
+import pdx.pipeline.GenomeBuild;
+
+public class GenomeBuildTests {
+
+    @Test
+    public void Given_ucscGrcAndBareNames_When_parsed_Then_sameBuildIsReturned() {
+
+        //given
+        String[] hg19 = {"Hg19", "GRCh37", "grch37.p13", "37", " hg19 "};
+        String[] hg38 = {"hg38", "GRCh38", "GRCh38.p14", "38"};
+        String[] hg18 = {"hg18", "NCBI36", "36"};
+
+        //when
+        //then
+        for (String name : hg19) Assert.assertEquals(name, GenomeBuild.HG19, GenomeBuild.of(name));
+        for (String name : hg38) Assert.assertEquals(name, GenomeBuild.HG38, GenomeBuild.of(name));
+        for (String name : hg18) Assert.assertEquals(name, GenomeBuild.HG18, GenomeBuild.of(name));
+    }
+
+    @Test
+    public void Given_valuesNamingNoBuild_When_parsed_Then_unknownIsReturned() {
+
+        //given
+        String[] names = {"", "10", "hg", "GRCh37x", "mm10", null};
+
+        //when
+        //then
+        for (String name : names) {
+            Assert.assertNull(name, GenomeBuild.of(name));
+            Assert.assertEquals(GenomeBuild.UNKNOWN, GenomeBuild.codeOf(name));
+        }
+    }
+}
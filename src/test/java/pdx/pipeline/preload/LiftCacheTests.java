@@ -0,0 +1,55 @@
+package pdx.pipeline.preload;
+
+import org.junit.Assert;
+import org.junit.Test;
+import pdx.pipeline.ChainIndex;
+import pdx.pipeline.ChainIndexRegistry;
+import pdx.pipeline.Contigs;
+import pdx.pipeline.LiftCache;
+
+public class LiftCacheTests {
+
+    private static final String CHAINFILE = "./src/main/resources/LiftOverResources/hg19ToHg38.over.chain.gz";
+
+    private final ChainIndex index = ChainIndexRegistry.get(CHAINFILE);
+
+    @Test
+    public void Given_repeatedCoordinates_When_liftedThroughCache_Then_matchIndexAndCountHits() {
+
+        //given
+        LiftCache cache = new LiftCache(index, 100);
+        int chr6 = Contigs.idOf("chr6");
+        int[] expected = new int[ChainIndex.RESULT_SIZE];
+        int[] lifted = new int[ChainIndex.RESULT_SIZE];
+        index.liftOver(chr6, 32188823, 32188823, expected);
+
+        //when
+        boolean first = cache.liftOver(chr6, 32188823, 32188823, lifted);
+        boolean second = cache.liftOver(chr6, 32188823, 32188823, lifted);
+        boolean unmappedFirst = cache.liftOver(chr6, 1, 1, new int[ChainIndex.RESULT_SIZE]);
+        boolean unmappedSecond = cache.liftOver(chr6, 1, 1, new int[ChainIndex.RESULT_SIZE]);
+
+        //then
+        Assert.assertTrue(first && second);
+        Assert.assertArrayEquals(expected, lifted);
+        Assert.assertFalse(unmappedFirst || unmappedSecond);
+        Assert.assertEquals(2, cache.getStats().hitCount());
+        Assert.assertEquals(2, cache.getStats().missCount());
+    }
+
+    @Test
+    public void Given_moreCoordinatesThanCapacity_When_lifted_Then_evictAndStayBounded() {
+
+        //given
+        LiftCache cache = new LiftCache(index, 100);
+        int chr1 = Contigs.idOf("chr1");
+        int[] lifted = new int[ChainIndex.RESULT_SIZE];
+
+        //when
+        for (int i = 0; i < 1000; i++) cache.liftOver(chr1, 1000000 + i * 1000, 1000000 + i * 1000, lifted);
+
+        //then
+        Assert.assertTrue(cache.getSize() <= 100);
+        Assert.assertTrue(cache.getStats().evictionCount() >= 900);
+    }
+}
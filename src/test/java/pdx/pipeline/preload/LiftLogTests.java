@@ -0,0 +1,127 @@
+package pdx.pipeline.preload;
+
+import org.junit.Assert;
+import org.junit.Test;
+import pdx.pipeline.LiftLog;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class LiftLogTests {
+
+    @Test
+    public void Given_twoLiftsOnOneDirectory_When_bothRelease_Then_everyRowIsWrittenOnce() throws IOException {
+
+        //given
+        Path logDir = Files.createTempDirectory("liftlog");
+        LiftLog first = LiftLog.acquire(logDir);
+        LiftLog second = LiftLog.acquire(logDir);
+
+        //when
+        for (int i = 0; i < 2000; i++) first.reject(LiftLog.Reason.UNMAPPED, i, Arrays.asList("1", String.valueOf(i)));
+        second.reject(LiftLog.Reason.SHORT_ROW, 7, Arrays.asList("short"));
+        first.release();
+        second.release();
+
+        //then
+        List<String> lines = Files.readAllLines(logDir.resolve("lift.log"), StandardCharsets.UTF_8);
+        Assert.assertSame(first, second);
+        Assert.assertEquals(2001 * 2, lines.size());
+        Assert.assertTrue(lines.contains(" Row data : [1, 1999]"));
+        Assert.assertTrue(lines.contains(" Row data : [short]"));
+        Assert.assertEquals(2000, first.getRejectedCount(LiftLog.Reason.UNMAPPED));
+        Assert.assertEquals(1, first.getRejectedCount(LiftLog.Reason.SHORT_ROW));
+        Assert.assertEquals(0, first.getRejectedCount(LiftLog.Reason.MISSING_COORDINATES));
+    }
+
+    @Test
+    public void Given_releasedLog_When_directoryIsAcquiredAgain_Then_appendToTheSameFile() throws IOException {
+
+        //given
+        Path logDir = Files.createTempDirectory("liftlog");
+        LiftLog first = LiftLog.acquire(logDir);
+        first.reject(LiftLog.Reason.MISSING_COORDINATES, 1, Arrays.asList("a"));
+        first.release();
+
+        //when
+        LiftLog second = LiftLog.acquire(logDir);
+        second.reject(LiftLog.Reason.MISSING_COORDINATES, 2, Arrays.asList("b"));
+        second.release();
+
+        //then
+        String liftLog = new String(Files.readAllBytes(logDir.resolve("lift.log")), StandardCharsets.UTF_8);
+        Assert.assertNotSame(first, second);
+        Assert.assertTrue(liftLog.contains("index: 1."));
+        Assert.assertTrue(liftLog.contains("index: 2."));
+    }
+
+    @Test
+    public void Given_nothingRejected_When_released_Then_noLogFileIsCreated() throws IOException {
+
+        //given
+        Path logDir = Files.createTempDirectory("liftlog");
+
+        //when
+        LiftLog.acquire(logDir).release();
+
+        //then
+        Assert.assertFalse(Files.exists(logDir.resolve("lift.log")));
+    }
+
+    @Test
+    public void Given_unwritableLogFile_When_manyRowsAreRejected_Then_rowsAreCountedAndReleaseReturns() throws IOException {
+
+        //given
+        Path logDir = Files.createTempDirectory("liftlog");
+        Files.createDirectory(logDir.resolve("lift.log"));
+        LiftLog liftLog = LiftLog.acquire(logDir);
+
+        //when
+        for (int i = 0; i < 50000; i++) liftLog.reject(LiftLog.Reason.UNMAPPED, i, Arrays.asList("1", String.valueOf(i)));
+        liftLog.release();
+
+        //then
+        Assert.assertTrue(liftLog.hasFailed());
+        Assert.assertEquals(50000, liftLog.getRejectedCount(LiftLog.Reason.UNMAPPED));
+    }
+
+    @Test
+    public void Given_oneLiftReleasingTheLog_When_anotherAcquiresItMeanwhile_Then_onlyOneWriterAppendsAtATime() throws Exception {
+
+        //given
+        Path logDir = Files.createTempDirectory("liftlog");
+        String writerName = "lift-log-" + logDir.getFileName();
+        List<String> row = Collections.nCopies(200, "0123456789");
+        int mostWriters = 0;
+        Thread rejecting = new Thread(() -> {
+            for (int i = 0; i < 5; i++) {
+                LiftLog liftLog = LiftLog.acquire(logDir);
+                for (int r = 0; r < 4000; r++) liftLog.reject(LiftLog.Reason.UNMAPPED, r, row);
+                liftLog.release();
+            }
+        });
+
+        //when
+        rejecting.start();
+        Thread[] threads = new Thread[256];
+        while (rejecting.isAlive()) {
+            LiftLog liftLog = LiftLog.acquire(logDir);
+            int writers = 0;
+            for (int i = Thread.enumerate(threads) - 1; i >= 0; i--) if (threads[i].getName().equals(writerName)) writers++;
+            mostWriters = Math.max(mostWriters, writers);
+            liftLog.release();
+        }
+
+        //then
+        List<String> lines = Files.readAllLines(logDir.resolve("lift.log"), StandardCharsets.UTF_8);
+        String rowData = " Row data : [" + String.join(", ", row) + "]";
+        Assert.assertEquals(1, mostWriters);
+        for (int i = 1; i < lines.size(); i += 2) Assert.assertEquals(rowData, lines.get(i));
+        Assert.assertEquals(5 * 4000 * 2, lines.size());
+    }
+}
@@ -0,0 +1,119 @@
+package pdx.pipeline.preload;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import pdx.pipeline.GenomeBuild;
+import pdx.pipeline.LiftManifest;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.Map;
+
+public class LiftManifestTests {
+
+    private static final Map<GenomeBuild, String> CHAIN = chains("aa", null);
+    private static final String VERSION = "1.0";
+
+    private Path directory;
+    private Path manifestFile;
+    private File input;
+    private Path output;
+
+    private static Map<GenomeBuild, String> chains(String hg19, String hg18) {
+        Map<GenomeBuild, String> chains = new EnumMap<>(GenomeBuild.class);
+        chains.put(GenomeBuild.HG19, hg19);
+        chains.put(GenomeBuild.HG18, hg18);
+        return chains;
+    }
+
+    @Before
+    public void createFiles() throws IOException {
+        directory = Files.createTempDirectory("manifest");
+        manifestFile = directory.resolve(LiftManifest.FILE_NAME);
+        input = Files.write(directory.resolve("mut.tsv"), "chromosome\tseq_start_position\n1\t100\n".getBytes(StandardCharsets.UTF_8)).toFile();
+        output = Files.write(directory.resolve("mut.tsv.lfted"), "lifted".getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void liftAndSave() throws IOException {
+        LiftManifest manifest = new LiftManifest(manifestFile, CHAIN, VERSION);
+        manifest.recordLift(input, output, 1500);
+        manifest.save();
+    }
+
+    @Test
+    public void Given_liftedFile_When_nothingChanged_Then_skipItAndCountTheTimeSaved() throws IOException {
+
+        //given
+        liftAndSave();
+
+        //when
+        LiftManifest manifest = new LiftManifest(manifestFile, CHAIN, VERSION);
+
+        //then
+        Assert.assertTrue(manifest.isUnchanged(input, output));
+        Assert.assertEquals(1, manifest.getFilesSkipped());
+        Assert.assertEquals(1500, manifest.getMillisSaved());
+    }
+
+    @Test
+    public void Given_liftedFile_When_onlyTouched_Then_skipIt() throws IOException {
+
+        //given
+        liftAndSave();
+
+        //when
+        input.setLastModified(input.lastModified() + 60000);
+        LiftManifest manifest = new LiftManifest(manifestFile, CHAIN, VERSION);
+
+        //then
+        Assert.assertTrue(manifest.isUnchanged(input, output));
+    }
+
+    @Test
+    public void Given_liftedFile_When_inputChainVersionOrOutputChanged_Then_liftItAgain() throws IOException {
+
+        //given
+        liftAndSave();
+
+        //when
+        LiftManifest otherChain = new LiftManifest(manifestFile, chains("bb", null), VERSION);
+        LiftManifest otherVersion = new LiftManifest(manifestFile, CHAIN, "1.1");
+        LiftManifest manifest = new LiftManifest(manifestFile, CHAIN, VERSION);
+
+        //then
+        Assert.assertFalse(otherChain.isUnchanged(input, output));
+        Assert.assertFalse(otherVersion.isUnchanged(input, output));
+        Assert.assertFalse(manifest.isUnchanged(input, directory.resolve("mut.tsv.lfted.gz")));
+        Files.write(input.toPath(), "chromosome\tseq_start_position\n2\t100\n".getBytes(StandardCharsets.UTF_8));
+        Assert.assertFalse(manifest.isUnchanged(input, output));
+        liftAndSave();
+        Files.delete(output);
+        Assert.assertFalse(new LiftManifest(manifestFile, CHAIN, VERSION).isUnchanged(input, output));
+        Assert.assertEquals(0, manifest.getFilesSkipped());
+    }
+
+    @Test
+    public void Given_liftedFile_When_chainOfAnotherBuildAppearsOrChanges_Then_liftItAgain() throws IOException {
+
+        //given
+        liftAndSave();
+
+        //when
+        LiftManifest hg18Added = new LiftManifest(manifestFile, chains("aa", "cc"), VERSION);
+        LiftManifest unchanged = new LiftManifest(manifestFile, chains("aa", null), VERSION);
+
+        //then
+        Assert.assertFalse(hg18Added.isUnchanged(input, output));
+        Assert.assertTrue(unchanged.isUnchanged(input, output));
+        hg18Added.recordLift(input, output, 1500);
+        hg18Added.save();
+        Assert.assertTrue(new LiftManifest(manifestFile, chains("aa", "cc"), VERSION).isUnchanged(input, output));
+        Assert.assertFalse(new LiftManifest(manifestFile, chains("aa", "dd"), VERSION).isUnchanged(input, output));
+        Assert.assertFalse(new LiftManifest(manifestFile, chains("aa", null), VERSION).isUnchanged(input, output));
+    }
+}
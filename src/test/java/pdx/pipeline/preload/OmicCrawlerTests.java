@@ -8,7 +8,10 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 public class OmicCrawlerTests {
 
@@ -125,6 +128,26 @@ public class OmicCrawlerTests {
         Assert.assertTrue(actualFiles.contains(cna1.toFile()));
     }
 
+    @Test
+    public void Given_severalProviders_When_crawledInParallel_Then_passEachFileOnOnce() throws IOException {
+
+        //given
+        Path provider3 = Files.createDirectory(Paths.get(updogDir.toString() + "/provider3"));
+        Path mut3 = Files.createFile(Files.createDirectory(provider3.resolve("MUT")).resolve("test_mut_2.csv"));
+        Files.createFile(updogDir.resolve("lift-manifest.tsv"));
+        OmicCrawler crawler = new OmicCrawler();
+        crawler.setParallelism(3);
+        Queue<File> found = new ConcurrentLinkedQueue<>();
+
+        //when
+        int count = crawler.crawl(rootDir.toFile(), found::add);
+
+        //then
+        Assert.assertEquals(3, count);
+        Assert.assertEquals(3, found.size());
+        Assert.assertTrue(found.containsAll(Arrays.asList(mut2.toFile(), cna1.toFile(), mut3.toFile())));
+    }
+
     private List<File> initCrawlersAndPassRootFile(File rootDir) throws IOException {
 
         OmicCrawler crawler = new OmicCrawler();
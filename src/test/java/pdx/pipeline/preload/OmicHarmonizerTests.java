@@ -4,10 +4,20 @@ package pdx.pipeline.preload;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import pdx.pipeline.ColumnarSheet;
+import pdx.pipeline.GenomeBuild;
+import pdx.pipeline.LiftLog;
 import pdx.pipeline.OmicHarmonizer;
+import pdx.pipeline.TsvUtils;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Semaphore;
 
 public class OmicHarmonizerTests {
 
@@ -131,6 +141,384 @@ public class OmicHarmonizerTests {
         assertArraysAreCopies(testData.get(1), actualList.get(1), 19);
     }
 
+    @Test
+    public void Given_parallelism_When_runLiftOverIsCalled_Then_outputMatchesSequentialInRowOrder() throws IOException {
+        int assemblyCol = 19;
+        int chromoCol = 20;
+        int seqStartCol = 21;
+        int rows = 3000;
+
+        //Given
+        createHeadersWithAssemChromoAndStartSeq(assemblyCol,chromoCol,seqStartCol,MUTCOLUMNSIZE);
+        for(int i = 0; i < rows; i++){
+            ArrayList<String> row = fillNewList("10", MUTCOLUMNSIZE);
+            row.set(chromoCol, i % 7 == 0 ? "" : "chr6");
+            row.set(seqStartCol, String.valueOf(32188823 + i));
+            testData.add(row);
+        }
+        OmicHarmonizer parallelHarmonizer = new OmicHarmonizer(CHAINFILE);
+        parallelHarmonizer.setParallelism(4);
+
+        //When
+        ArrayList<ArrayList<String>> expected = harmonizer.runLiftOver(testData,"/tmp/TESTURI", OmicHarmonizer.OMIC.MUT);
+        ArrayList<ArrayList<String>> actual = parallelHarmonizer.runLiftOver(testData,"/tmp/TESTURI", OmicHarmonizer.OMIC.MUT);
+
+        //Then
+        Assert.assertEquals(expected, actual);
+        Assert.assertTrue(actual.size() > rows / 2);
+    }
+
+    @Test
+    public void Given_duplicateUnliftableRows_When_runLiftOverIsCalled_Then_logEachRowWithItsOwnIndex() throws IOException {
+        int assemblyCol = 19;
+        int chromoCol = 20;
+        int seqStartCol = 21;
+
+        //Given
+        Path logDir = Files.createTempDirectory("liftlog");
+        createHeadersWithAssemChromoAndStartSeq(assemblyCol,chromoCol,seqStartCol,MUTCOLUMNSIZE);
+        for(int i = 0; i < 3; i++){
+            ArrayList<String> row = fillNewList("10", MUTCOLUMNSIZE);
+            row.set(chromoCol, "");
+            testData.add(row);
+        }
+
+        //When
+        harmonizer.runLiftOver(testData, logDir.resolve("test_mut.tsv").toString(), OmicHarmonizer.OMIC.MUT);
+
+        //Then
+        String liftLog = new String(Files.readAllBytes(logDir.resolve("lift.log")), StandardCharsets.UTF_8);
+        Assert.assertTrue(liftLog.contains("index: 1."));
+        Assert.assertTrue(liftLog.contains("index: 2."));
+        Assert.assertTrue(liftLog.contains("index: 3."));
+    }
+
+    @Test
+    public void Given_rowsPushedOneAtATime_When_liftStreamIsClosed_Then_outputMatchesRunLiftOver() throws IOException {
+        int assemblyCol = 19;
+        int chromoCol = 20;
+        int seqStartCol = 21;
+        int rows = 5000;
+
+        //Given
+        createHeadersWithAssemChromoAndStartSeq(assemblyCol,chromoCol,seqStartCol,MUTCOLUMNSIZE);
+        for(int i = 0; i < rows; i++){
+            ArrayList<String> row = fillNewList("10", MUTCOLUMNSIZE);
+            row.set(chromoCol, i % 11 == 0 ? "" : "chr6");
+            row.set(seqStartCol, String.valueOf(32188823 + i));
+            testData.add(row);
+        }
+        ArrayList<ArrayList<String>> streamed = new ArrayList<>();
+
+        //When
+        ArrayList<ArrayList<String>> expected = harmonizer.runLiftOver(testData,"/tmp/TESTURI", OmicHarmonizer.OMIC.MUT);
+        OmicHarmonizer.LiftStream liftStream = harmonizer.openLiftStream("/tmp/TESTURI", OmicHarmonizer.OMIC.MUT, streamed::add);
+        for (ArrayList<String> row : testData) liftStream.accept(row);
+        liftStream.close();
+
+        //Then
+        Assert.assertEquals(expected, streamed);
+        Assert.assertEquals(rows, liftStream.getRowsRead());
+        Assert.assertEquals(expected.size() - 1, liftStream.getRowsLifted());
+    }
+
+    @Test
+    public void Given_columnarSheet_When_runLiftOverIsCalled_Then_selectedRowsWithOverlaysMatchTheListLift() throws IOException {
+        int assemblyCol = 19;
+        int chromoCol = 20;
+        int seqStartCol = 21;
+        int rows = 5000;
+
+        //Given
+        createHeadersWithAssemChromoAndStartSeq(assemblyCol,chromoCol,seqStartCol,MUTCOLUMNSIZE);
+        for(int i = 0; i < rows; i++){
+            ArrayList<String> row = fillNewList("10", i % 13 == 0 ? chromoCol : MUTCOLUMNSIZE);
+            if (row.size() > seqStartCol) {
+                row.set(chromoCol, i % 11 == 0 ? "" : "chr6");
+                row.set(seqStartCol, String.valueOf(32188823 + i));
+            }
+            testData.add(row);
+        }
+        ColumnarSheet.Builder builder = harmonizer.newSheetBuilder(OmicHarmonizer.OMIC.MUT);
+        for (ArrayList<String> row : testData) builder.accept(row);
+        ColumnarSheet sheet = builder.build();
+
+        //When
+        ArrayList<ArrayList<String>> expected = harmonizer.runLiftOver(testData,"/tmp/TESTURI", OmicHarmonizer.OMIC.MUT);
+        int lifted = harmonizer.runLiftOver(sheet, "/tmp/TESTURI", OmicHarmonizer.OMIC.MUT);
+
+        //Then
+        ArrayList<ArrayList<String>> actual = new ArrayList<>();
+        for (int row = 0; row < sheet.getRowCount(); row++) {
+            if (sheet.isSelected(row)) actual.add(sheet.getRow(row));
+        }
+        Assert.assertEquals(expected, actual);
+        Assert.assertEquals(expected.size() - 1, lifted);
+        Assert.assertEquals(lifted, sheet.getSelectedCount());
+    }
+
+    @Test
+    public void Given_csvWithCrlfAndShortRows_When_patchLiftIsClosed_Then_outputMatchesRunLiftOver() throws IOException {
+        int assemblyCol = 19;
+        int chromoCol = 21;
+        int seqStartCol = 20;
+        int rows = 5000;
+
+        //Given
+        createHeadersWithAssemChromoAndStartSeq(assemblyCol,chromoCol,seqStartCol,MUTCOLUMNSIZE);
+        StringBuilder csv = new StringBuilder(String.join(",", testData.get(0))).append("\r\n");
+        for(int i = 0; i < rows; i++){
+            ArrayList<String> row = fillNewList("é\t10", i % 13 == 0 ? chromoCol : MUTCOLUMNSIZE);
+            row.set(seqStartCol, String.valueOf(32188823 + i));
+            if (row.size() > chromoCol) row.set(chromoCol, i % 11 == 0 ? "" : "chr6");
+            testData.add(row);
+            csv.append(String.join(",", row)).append("\r\n");
+        }
+        Path input = Files.createTempFile("patch_mut", ".csv");
+        Files.write(input, csv.toString().getBytes(StandardCharsets.UTF_8));
+        Path expectedFile = Files.createTempFile("expected", ".lfted");
+        Path patchedFile = Files.createTempFile("patched", ".lfted");
+        TsvUtils tsvUtils = new TsvUtils();
+
+        //When
+        tsvUtils.writeTSV(harmonizer.runLiftOver(testData, input.toString(), OmicHarmonizer.OMIC.MUT), expectedFile.toString());
+        OmicHarmonizer.PatchLift patchLift;
+        try (TsvUtils.TsvWriter writer = tsvUtils.openTsvWriter(patchedFile.toString())) {
+            patchLift = harmonizer.openPatchLift(input.toString(), OmicHarmonizer.OMIC.MUT, writer);
+            tsvUtils.patchCsv(input.toString(), ",", patchLift);
+            patchLift.close();
+        }
+
+        //Then
+        Assert.assertArrayEquals(Files.readAllBytes(expectedFile), Files.readAllBytes(patchedFile));
+        Assert.assertEquals(rows, patchLift.getRowsRead());
+        Assert.assertTrue(patchLift.getRowsLifted() > 0);
+        Assert.assertEquals(Files.readAllLines(expectedFile).size() - 1, patchLift.getRowsLifted());
+    }
+
+    @Test
+    public void Given_cnaSegments_When_liftedAsListsColumnsOrPatchedBytes_Then_endsAreLiftedAndChangesCounted() throws IOException {
+        int chromoCol = 1;
+        int seqStartCol = 2;
+        int seqEndCol = 3;
+        OmicHarmonizer cnaHarmonizer = new OmicHarmonizer(CHAINFILE);
+
+        //Given
+        ArrayList<String> headers = fillNewList("HEADER", 5);
+        headers.set(chromoCol, chromoHeader);
+        headers.set(seqStartCol, seqStartHeader);
+        headers.set(seqEndCol, seqEndHeader);
+        testData.add(headers);
+        String[][] segments = {{"chr6", "32188823", "32189823"}, {"chr22", "16100000", "16100500"}, {"1", "1000", "900"}};
+        for (String[] segment : segments) {
+            ArrayList<String> row = fillNewList("0.2", 5);
+            row.set(chromoCol, segment[0]);
+            row.set(seqStartCol, segment[1]);
+            row.set(seqEndCol, segment[2]);
+            testData.add(row);
+        }
+        StringBuilder tsv = new StringBuilder();
+        for (ArrayList<String> row : testData) tsv.append(String.join("\t", row)).append('\n');
+        Path input = Files.createTempFile("segments_cna", ".tsv");
+        Files.write(input, tsv.toString().getBytes(StandardCharsets.UTF_8));
+        ColumnarSheet.Builder builder = cnaHarmonizer.newSheetBuilder(OmicHarmonizer.OMIC.CNA);
+        for (ArrayList<String> row : testData) builder.accept(row);
+        ColumnarSheet sheet = builder.build();
+        Path patched = Files.createTempFile("segments_cna", ".lfted");
+        TsvUtils tsvUtils = new TsvUtils();
+
+        //When
+        ArrayList<ArrayList<String>> lifted = cnaHarmonizer.runLiftOver(testData, input.toString(), OmicHarmonizer.OMIC.CNA);
+        cnaHarmonizer.runLiftOver(sheet, input.toString(), OmicHarmonizer.OMIC.CNA);
+        try (TsvUtils.TsvWriter writer = tsvUtils.openTsvWriter(patched.toString())) {
+            OmicHarmonizer.PatchLift patchLift = cnaHarmonizer.openPatchLift(input.toString(), OmicHarmonizer.OMIC.CNA, writer);
+            tsvUtils.patchCsv(input.toString(), "\t", patchLift);
+            patchLift.close();
+        }
+
+        //Then
+        Assert.assertEquals(3, lifted.size());
+        Assert.assertEquals(Arrays.asList("6", "32221046", "32222046"), lifted.get(1).subList(chromoCol, seqEndCol + 1));
+        Assert.assertEquals("22", lifted.get(2).get(chromoCol));
+        Assert.assertNotEquals("16100500", lifted.get(2).get(seqEndCol));
+        Assert.assertEquals(lifted.get(1), sheet.getRow(1));
+        Assert.assertEquals(lifted.get(2), sheet.getRow(2));
+        StringBuilder expected = new StringBuilder();
+        for (ArrayList<String> row : lifted) expected.append(String.join("\t", row)).append('\n');
+        Assert.assertEquals(expected.toString(), new String(Files.readAllBytes(patched), StandardCharsets.UTF_8));
+        Assert.assertEquals(3, cnaHarmonizer.getSegmentsOnOppositeStrand());
+    }
+
+    @Test
+    public void Given_rowsOfMixedBuilds_When_liftedAsListsColumnsOrPatchedBytes_Then_eachRowIsLiftedFromItsOwnBuild() throws IOException {
+        int assemblyCol = 0;
+        int chromoCol = 1;
+        int seqStartCol = 2;
+        OmicHarmonizer buildHarmonizer = new OmicHarmonizer(CHAINFILE);
+        OmicHarmonizer hg18Harmonizer = new OmicHarmonizer(CHAINFILE);
+        hg18Harmonizer.getLifterPool().setChainFile(GenomeBuild.HG18, CHAINFILE);
+
+        //Given
+        createHeadersWithAssemChromoAndStartSeq(assemblyCol, chromoCol, seqStartCol, 4);
+        String[] builds = {"GRCh38", "Hg19", "NCBI36", "hg38", "unknown"};
+        for (String build : builds) {
+            ArrayList<String> row = fillNewList("10", 4);
+            row.set(assemblyCol, build);
+            row.set(chromoCol, "chr6");
+            row.set(seqStartCol, "32188823");
+            testData.add(row);
+        }
+        StringBuilder tsv = new StringBuilder();
+        for (ArrayList<String> row : testData) tsv.append(String.join("\t", row)).append('\n');
+        Path input = Files.createTempFile("builds_mut", ".tsv");
+        Files.write(input, tsv.toString().getBytes(StandardCharsets.UTF_8));
+        ColumnarSheet.Builder builder = buildHarmonizer.newSheetBuilder(OmicHarmonizer.OMIC.MUT);
+        for (ArrayList<String> row : testData) builder.accept(row);
+        ColumnarSheet sheet = builder.build();
+        Path patched = Files.createTempFile("builds_mut", ".lfted");
+        TsvUtils tsvUtils = new TsvUtils();
+
+        //When
+        ArrayList<ArrayList<String>> lifted = buildHarmonizer.runLiftOver(testData, input.toString(), OmicHarmonizer.OMIC.MUT);
+        int liftedColumns = buildHarmonizer.runLiftOver(sheet, input.toString(), OmicHarmonizer.OMIC.MUT);
+        try (TsvUtils.TsvWriter writer = tsvUtils.openTsvWriter(patched.toString())) {
+            OmicHarmonizer.PatchLift patchLift = buildHarmonizer.openPatchLift(input.toString(), OmicHarmonizer.OMIC.MUT, writer);
+            tsvUtils.patchCsv(input.toString(), "\t", patchLift);
+            patchLift.close();
+        }
+        ArrayList<ArrayList<String>> liftedWithHg18Chain = hg18Harmonizer.runLiftOver(testData, input.toString(), OmicHarmonizer.OMIC.MUT);
+
+        //Then
+        Assert.assertEquals(5, lifted.size());
+        Assert.assertEquals(Arrays.asList("GRCh38", "6", "32188823"), lifted.get(1).subList(0, 3));
+        Assert.assertEquals(Arrays.asList("Hg19", "6", "32221046"), lifted.get(2).subList(0, 3));
+        Assert.assertEquals(Arrays.asList("hg38", "6", "32188823"), lifted.get(3).subList(0, 3));
+        Assert.assertEquals(Arrays.asList("unknown", "6", "32221046"), lifted.get(4).subList(0, 3));
+        Assert.assertEquals(4, liftedColumns);
+        Assert.assertFalse(sheet.isSelected(3));
+        Assert.assertEquals(lifted.get(1), sheet.getRow(1));
+        Assert.assertEquals(lifted.get(2), sheet.getRow(2));
+        StringBuilder expected = new StringBuilder();
+        for (ArrayList<String> row : lifted) expected.append(String.join("\t", row)).append('\n');
+        Assert.assertEquals(expected.toString(), new String(Files.readAllBytes(patched), StandardCharsets.UTF_8));
+        Assert.assertEquals(6, liftedWithHg18Chain.size());
+        Assert.assertEquals(Arrays.asList("NCBI36", "6", "32221046"), liftedWithHg18Chain.get(3).subList(0, 3));
+    }
+
+    @Test
+    public void Given_rowsOfABuildWithoutChain_When_lifted_Then_onlyRowsWithCoordinatesAreCountedUnmapped() throws IOException {
+        int assemblyCol = 0;
+        int chromoCol = 1;
+        int seqStartCol = 2;
+
+        //Given
+        createHeadersWithAssemChromoAndStartSeq(assemblyCol, chromoCol, seqStartCol, 4);
+        String[] chromosomes = {"chr6", "", "chr6"};
+        String[] starts = {"32188823", "32188823", ""};
+        for (int i = 0; i < chromosomes.length; i++) {
+            ArrayList<String> row = fillNewList("10", 4);
+            row.set(assemblyCol, "NCBI36");
+            row.set(chromoCol, chromosomes[i]);
+            row.set(seqStartCol, starts[i]);
+            testData.add(row);
+        }
+        Path input = Files.createTempFile("nochain_mut", ".tsv");
+        ColumnarSheet.Builder builder = harmonizer.newSheetBuilder(OmicHarmonizer.OMIC.MUT);
+        for (ArrayList<String> row : testData) builder.accept(row);
+        ColumnarSheet sheet = builder.build();
+        long unmapped = LiftLog.getTotalRejected(LiftLog.Reason.UNMAPPED);
+        long missing = LiftLog.getTotalRejected(LiftLog.Reason.MISSING_COORDINATES);
+
+        //When
+        ArrayList<ArrayList<String>> lifted = harmonizer.runLiftOver(testData, input.toString(), OmicHarmonizer.OMIC.MUT);
+        harmonizer.runLiftOver(sheet, input.toString(), OmicHarmonizer.OMIC.MUT);
+
+        //Then
+        Assert.assertEquals(1, lifted.size());
+        Assert.assertEquals(0, sheet.getSelectedCount());
+        Assert.assertEquals(2, LiftLog.getTotalRejected(LiftLog.Reason.UNMAPPED) - unmapped);
+        Assert.assertEquals(4, LiftLog.getTotalRejected(LiftLog.Reason.MISSING_COORDINATES) - missing);
+    }
+
+    @Test
+    public void Given_everyLiftSlotTaken_When_rowsAreStreamed_Then_readingGoesOnAndOnlyTheLiftWaits() throws Exception {
+        int assemblyCol = 0;
+        int chromoCol = 1;
+        int seqStartCol = 2;
+
+        //Given
+        createHeadersWithAssemChromoAndStartSeq(assemblyCol, chromoCol, seqStartCol, 4);
+        for (int i = 0; i < 10; i++) {
+            ArrayList<String> row = fillNewList("10", 4);
+            row.set(assemblyCol, "Hg19");
+            row.set(chromoCol, "chr6");
+            row.set(seqStartCol, String.valueOf(32188823 + i));
+            testData.add(row);
+        }
+        Semaphore liftSlots = new Semaphore(1);
+        harmonizer.setLiftSlots(liftSlots);
+        liftSlots.acquire();
+        ArrayList<ArrayList<String>> lifted = new ArrayList<>();
+        OmicHarmonizer.LiftStream stream = harmonizer.openLiftStream(Files.createTempFile("slots_mut", ".tsv").toString(),
+                OmicHarmonizer.OMIC.MUT, lifted::add);
+
+        //When
+        for (ArrayList<String> row : testData) stream.accept(row);
+        Thread closing = new Thread(() -> {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        closing.start();
+        closing.join(200);
+        boolean waitedForSlot = closing.isAlive();
+        liftSlots.release();
+        closing.join();
+
+        //Then
+        Assert.assertEquals(10, stream.getRowsRead());
+        Assert.assertTrue(waitedForSlot);
+        Assert.assertEquals(11, lifted.size());
+        Assert.assertEquals(1, liftSlots.availablePermits());
+    }
+
+    @Test
+    public void Given_startThatIsNotANumber_When_sheetIsLifted_Then_failBeforeLiftingNamingFileRowAndColumn() throws IOException {
+        int assemblyCol = 0;
+        int chromoCol = 1;
+        int seqStartCol = 2;
+
+        //Given
+        createHeadersWithAssemChromoAndStartSeq(assemblyCol, chromoCol, seqStartCol, 4);
+        String[] starts = {"32188823", "12a", "32188825"};
+        for (String start : starts) {
+            ArrayList<String> row = fillNewList("10", 4);
+            row.set(chromoCol, "chr6");
+            row.set(seqStartCol, start);
+            testData.add(row);
+        }
+        ColumnarSheet.Builder builder = harmonizer.newSheetBuilder(OmicHarmonizer.OMIC.MUT);
+        for (ArrayList<String> row : testData) builder.accept(row);
+        ColumnarSheet sheet = builder.build();
+        Path input = Files.createTempFile("provider_mut", ".tsv");
+        long unmapped = LiftLog.getTotalRejected(LiftLog.Reason.UNMAPPED);
+
+        //When
+        NumberFormatException error = null;
+        try {
+            harmonizer.runLiftOver(sheet, input.toString(), OmicHarmonizer.OMIC.MUT);
+        } catch (NumberFormatException e) {
+            error = e;
+        }
+
+        //Then
+        Assert.assertNotNull(error);
+        Assert.assertEquals("For input string: \"12a\" in column seq_start_position at row 2 of " + input, error.getMessage());
+        Assert.assertEquals(unmapped, LiftLog.getTotalRejected(LiftLog.Reason.UNMAPPED));
+    }
+
     private void createHeadersWithAssemChromoAndStartSeq(int assemblyCol,int chromoCol,int seqStartCol, int columnSize){
 
         ArrayList<String> headers = fillNewList("HEADER",columnSize);
@@ -0,0 +1,144 @@
+package pdx.pipeline.preload;
+
+import org.junit.Assert;
+import org.junit.Test;
+import pdx.pipeline.Contigs;
+import pdx.pipeline.PDXLiftOver;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class PDXLiftOverTests {
+
+    private static final String CHAINFILE = "./src/main/resources/LiftOverResources/hg19ToHg38.over.chain.gz";
+
+    private PDXLiftOver lifter = newLifter();
+
+    @Test
+    public void Given_batchOfRows_When_liftOverBatchIsCalled_Then_fillOutputArraysAndStatus(){
+
+        //given
+        int[] contigs = {lifter.contigIdOf("chr6"), lifter.contigIdOf(""), lifter.contigIdOf("6"), lifter.contigIdOf("6")};
+        long[] starts = {32188823, 100, 32188823, 500};
+        long[] ends = {32188823, 100, 32188823, 400};
+        int[] liftedContigs = new int[4];
+        long[] liftedStarts = new long[4];
+        long[] liftedEnds = new long[4];
+        byte[] status = new byte[4];
+
+        //when
+        lifter.liftOverBatch(contigs, starts, ends, 0, 4, liftedContigs, liftedStarts, liftedEnds, status);
+
+        //then
+        Assert.assertEquals(PDXLiftOver.LIFTED, status[0]);
+        Assert.assertEquals("6", Contigs.vcfName(liftedContigs[0]));
+        Assert.assertEquals(32221046, liftedStarts[0]);
+        Assert.assertEquals(32221046, liftedEnds[0]);
+        Assert.assertEquals(PDXLiftOver.INVALID, status[1]);
+        Assert.assertEquals(PDXLiftOver.LIFTED, status[2]);
+        Assert.assertEquals(PDXLiftOver.INVALID, status[3]);
+    }
+
+    @Test
+    public void Given_intCoordinates_When_liftOverBatchIsCalled_Then_matchLongResults(){
+
+        //given
+        int[] contigs = {lifter.contigIdOf("chr6")};
+        int[] liftedContigs = new int[1];
+        int[] liftedStarts = new int[1];
+        int[] liftedEnds = new int[1];
+        byte[] status = new byte[1];
+
+        //when
+        lifter.liftOverBatch(contigs, new int[]{32188823}, new int[]{32188823}, 0, 1, liftedContigs, liftedStarts, liftedEnds, status);
+
+        //then
+        Assert.assertEquals(PDXLiftOver.LIFTED, status[0]);
+        Assert.assertEquals(32221046, liftedStarts[0]);
+    }
+
+    @Test
+    public void Given_coordinateMap_When_liftOverCoordinatesIsCalled_Then_returnVcfChromoStartAndEnd(){
+
+        //given
+        Map<String, long[]> coordinates = new LinkedHashMap<>();
+        coordinates.put("chr6", new long[]{32188823, 32188823});
+
+        //when
+        List<String> lifted = lifter.liftOverCoordinates(coordinates);
+
+        //then
+        Assert.assertEquals(3, lifted.size());
+        Assert.assertEquals("6", lifted.get(0));
+        Assert.assertEquals("32221046", lifted.get(1));
+        Assert.assertEquals("32221046", lifted.get(2));
+    }
+
+    @Test
+    public void Given_unsortedRows_When_liftOverSweepIsCalled_Then_matchLiftOverBatchInRowOrder(){
+
+        //given
+        int rows = 5000;
+        Random random = new Random(7);
+        int[] contigs = new int[rows];
+        long[] starts = new long[rows];
+        long[] ends = new long[rows];
+        for (int i = 0; i < rows; i++) {
+            contigs[i] = i % 97 == 0 ? Contigs.UNKNOWN : lifter.contigIdOf(String.valueOf(1 + random.nextInt(22)));
+            starts[i] = i % 89 == 0 ? -1 : 1 + random.nextInt(150000000);
+            ends[i] = starts[i] + random.nextInt(3);
+        }
+        int[] expectedContigs = new int[rows];
+        long[] expectedStarts = new long[rows];
+        long[] expectedEnds = new long[rows];
+        byte[] expectedStatus = new byte[rows];
+        int[] liftedContigs = new int[rows];
+        long[] liftedStarts = new long[rows];
+        long[] liftedEnds = new long[rows];
+        byte[] status = new byte[rows];
+
+        //when
+        lifter.liftOverBatch(contigs, starts, ends, 1, rows, expectedContigs, expectedStarts, expectedEnds, expectedStatus);
+        lifter.liftOverSweep(contigs, starts, ends, 1, rows, liftedContigs, liftedStarts, liftedEnds, status);
+
+        //then
+        Assert.assertArrayEquals(expectedContigs, liftedContigs);
+        Assert.assertArrayEquals(expectedStarts, liftedStarts);
+        Assert.assertArrayEquals(expectedEnds, liftedEnds);
+        Assert.assertArrayEquals(expectedStatus, status);
+    }
+
+    @Test
+    public void Given_segmentOnInvertedChain_When_liftedInBatchOrSweep_Then_reportTheOppositeStrand(){
+
+        //given
+        int[] contigs = {lifter.contigIdOf("chr6"), lifter.contigIdOf("chr22")};
+        long[] starts = {32188823, 16100000};
+        long[] ends = {32189823, 16100500};
+        int[] liftedContigs = new int[2];
+        long[] liftedStarts = new long[2];
+        long[] liftedEnds = new long[2];
+        boolean[] batchStrands = new boolean[2];
+        boolean[] sweepStrands = new boolean[2];
+        byte[] status = new byte[2];
+
+        //when
+        lifter.liftOverSweep(contigs, starts, ends, 0, 2, liftedContigs, liftedStarts, liftedEnds, sweepStrands, status);
+        lifter.liftOverBatch(contigs, starts, ends, 0, 2, liftedContigs, liftedStarts, liftedEnds, batchStrands, status);
+
+        //then
+        Assert.assertEquals(PDXLiftOver.LIFTED, status[1]);
+        Assert.assertEquals("22", Contigs.vcfName(liftedContigs[1]));
+        Assert.assertTrue(liftedStarts[1] < liftedEnds[1]);
+        Assert.assertArrayEquals(new boolean[]{false, true}, batchStrands);
+        Assert.assertArrayEquals(batchStrands, sweepStrands);
+    }
+
+    private static PDXLiftOver newLifter(){
+        PDXLiftOver lifter = new PDXLiftOver();
+        lifter.setChainFileURI(CHAINFILE);
+        return lifter;
+    }
+}
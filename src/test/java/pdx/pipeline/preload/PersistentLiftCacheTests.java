@@ -0,0 +1,121 @@
+package pdx.pipeline.preload;
+
+import org.junit.Assert;
+import org.junit.Test;
+import pdx.pipeline.ChainIndex;
+import pdx.pipeline.ChainIndexRegistry;
+import pdx.pipeline.Contigs;
+import pdx.pipeline.PersistentLiftCache;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+public class PersistentLiftCacheTests {
+
+    private static final String CHAINFILE = "./src/main/resources/LiftOverResources/hg19ToHg38.over.chain.gz";
+
+    private final ChainIndex index = ChainIndexRegistry.get(CHAINFILE);
+    private final int chr6 = Contigs.idOf("chr6");
+
+    @Test
+    public void Given_previousRun_When_cacheIsReopened_Then_answerFromDisk() throws IOException {
+
+        //given
+        Path dir = Files.createTempDirectory("liftcache");
+        int[] lifted = new int[ChainIndex.RESULT_SIZE];
+        try (PersistentLiftCache firstRun = PersistentLiftCache.open(dir, index)) {
+            firstRun.liftOver(chr6, 32188823, 32188823, lifted);
+            firstRun.liftOver(chr6, 1, 1, lifted);
+        }
+
+        //when
+        int[] relifted = new int[ChainIndex.RESULT_SIZE];
+        boolean mapped;
+        boolean unmapped;
+        try (PersistentLiftCache secondRun = PersistentLiftCache.open(dir, index)) {
+            mapped = secondRun.liftOver(chr6, 32188823, 32188823, relifted);
+            unmapped = secondRun.liftOver(chr6, 1, 1, new int[ChainIndex.RESULT_SIZE]);
+
+            //then
+            Assert.assertEquals(2, secondRun.getLoadedCount());
+            Assert.assertEquals(2, secondRun.getHitCount());
+            Assert.assertEquals(0, secondRun.getMissCount());
+        }
+        Assert.assertTrue(mapped);
+        Assert.assertFalse(unmapped);
+        Assert.assertEquals(32221046, relifted[ChainIndex.START]);
+        Assert.assertEquals("chr6", Contigs.chainName(relifted[ChainIndex.CONTIG]));
+    }
+
+    @Test
+    public void Given_partialLastRecord_When_cacheIsReopened_Then_keepCompleteRecords() throws IOException {
+
+        //given
+        Path dir = Files.createTempDirectory("liftcache");
+        Path file;
+        try (PersistentLiftCache firstRun = PersistentLiftCache.open(dir, index)) {
+            for (int i = 0; i < 10; i++) firstRun.liftOver(chr6, 32188823 + i, 32188823 + i, new int[ChainIndex.RESULT_SIZE]);
+            file = firstRun.getFile();
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 5);
+        }
+
+        //when
+        try (PersistentLiftCache secondRun = PersistentLiftCache.open(dir, index)) {
+            secondRun.liftOver(chr6, 32188832, 32188832, new int[ChainIndex.RESULT_SIZE]);
+
+            //then
+            Assert.assertEquals(9, secondRun.getLoadedCount());
+            Assert.assertEquals(1, secondRun.getMissCount());
+        }
+        try (PersistentLiftCache thirdRun = PersistentLiftCache.open(dir, index)) {
+            Assert.assertEquals(10, thirdRun.getLoadedCount());
+        }
+    }
+
+    @Test
+    public void Given_cacheOfOtherChainVersion_When_opened_Then_deleteIt() throws IOException {
+
+        //given
+        Path dir = Files.createTempDirectory("liftcache");
+        Path stale = dir.resolve(Paths.get(CHAINFILE).getFileName() + "-0000000000000000.liftcache");
+        Files.write(stale, new byte[]{1, 2, 3});
+
+        //when
+        try (PersistentLiftCache cache = PersistentLiftCache.open(dir, index)) {
+
+            //then
+            Assert.assertFalse(Files.exists(stale));
+            Assert.assertTrue(Files.exists(cache.getFile()));
+            Assert.assertEquals(0, cache.getLoadedCount());
+        }
+    }
+
+    @Test
+    public void Given_moreLiftsThanTheCacheKeeps_When_closed_Then_fileIsCompactedToTheBound() throws IOException {
+
+        //given
+        Path dir = Files.createTempDirectory("liftcache");
+        try (PersistentLiftCache firstRun = PersistentLiftCache.open(dir, index, 5)) {
+            for (int i = 0; i < 50; i++) firstRun.liftOver(chr6, 32188823 + i, 32188823 + i, new int[ChainIndex.RESULT_SIZE]);
+            Assert.assertEquals(50, firstRun.getAppendedCount());
+        }
+
+        //when
+        try (PersistentLiftCache secondRun = PersistentLiftCache.open(dir, index, 5)) {
+            int[] lifted = new int[ChainIndex.RESULT_SIZE];
+            boolean mapped = secondRun.liftOver(chr6, 32188823, 32188823, lifted);
+
+            //then
+            Assert.assertTrue(secondRun.getLoadedCount() <= 5);
+            Assert.assertTrue(secondRun.getRecordsInFile() <= 6);
+            Assert.assertTrue(mapped);
+            Assert.assertEquals(32221046, lifted[ChainIndex.START]);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package pdx.pipeline.preload;
+
+import org.junit.Assert;
+import org.junit.Test;
+import pdx.pipeline.StagedPipeline;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class StagedPipelineTests {
+
+    @Test
+    public void Given_threeStages_When_itemsAreSubmitted_Then_eachPassesEveryStageOnce() throws InterruptedException {
+
+        //given
+        Set<String> written = ConcurrentHashMap.newKeySet();
+        StagedPipeline<Integer> pipeline = StagedPipeline.<Integer>from("source")
+                .then("read", 2, i -> "file" + i)
+                .then("lift", 3, name -> name + ".lfted")
+                .then("write", 1, name -> {
+                    written.add(name);
+                    return null;
+                })
+                .start();
+
+        //when
+        for (int i = 0; i < 100; i++) pipeline.submit(i);
+        pipeline.awaitCompletion();
+
+        //then
+        Assert.assertEquals(100, written.size());
+        Assert.assertTrue(written.contains("file42.lfted"));
+        Assert.assertEquals(100, pipeline.getSubmittedCount());
+        for (StagedPipeline.Stage stage : pipeline.getStages()) {
+            Assert.assertEquals(100, stage.getProcessedCount());
+            Assert.assertEquals(0, stage.getQueueDepth());
+            Assert.assertTrue(stage.getMaxQueueDepth() <= stage.getQueueCapacity());
+        }
+    }
+
+    @Test
+    public void Given_failingAndDroppedItems_When_pipelineRuns_Then_onlyTheOthersReachTheLastStage() throws InterruptedException {
+
+        //given
+        Set<Integer> written = ConcurrentHashMap.newKeySet();
+        StagedPipeline<Integer> pipeline = StagedPipeline.<Integer>from("source")
+                .then("read", 1, i -> {
+                    if (i == 3) throw new IOException("unreadable");
+                    return i % 2 == 0 ? null : i;
+                })
+                .then("write", 2, i -> {
+                    written.add(i);
+                    return null;
+                })
+                .start();
+
+        //when
+        for (int i = 0; i < 10; i++) pipeline.submit(i);
+        pipeline.awaitCompletion();
+
+        //then
+        Assert.assertEquals(4, written.size());
+        Assert.assertFalse(written.contains(3));
+        Assert.assertEquals(1, pipeline.getStages().get(0).getFailedCount());
+        Assert.assertEquals(9, pipeline.getStages().get(0).getProcessedCount());
+        Assert.assertEquals(4, pipeline.getStages().get(1).getProcessedCount());
+    }
+
+    @Test
+    public void Given_slowLastStage_When_pipelineRuns_Then_earlierStagesAreHeldBackByFullQueues() throws InterruptedException {
+
+        //given
+        StagedPipeline<Integer> pipeline = StagedPipeline.<Integer>from("source")
+                .then("read", 1, i -> i)
+                .then("write", 1, i -> {
+                    Thread.sleep(20);
+                    return null;
+                })
+                .start();
+
+        //when
+        for (int i = 0; i < 20; i++) pipeline.submit(i);
+        pipeline.awaitCompletion();
+
+        //then
+        StagedPipeline.Stage read = pipeline.getStages().get(0);
+        StagedPipeline.Stage write = pipeline.getStages().get(1);
+        Assert.assertEquals(write.getQueueCapacity(), write.getMaxQueueDepth());
+        Assert.assertTrue(read.getBlockedMillis() > 0);
+        Assert.assertTrue(pipeline.getSourceBlockedMillis() > 0);
+        Assert.assertTrue(write.getBusyMillis() >= 20 * 20);
+    }
+}
@@ -0,0 +1,93 @@
+package pdx.pipeline.preload;
+
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import org.junit.Assert;
+import org.junit.Test;
+import pdx.pipeline.TsvUtils;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+public class TsvUtilsTests {
+
+    private static final String EXPECTED = "chromosome\tseq_start_position\tgröße\n6\t32221046\t\n";
+
+    private TsvUtils tsvUtils = new TsvUtils();
+
+    @Test
+    public void Given_sheet_When_writeTSVIsCalled_Then_writeUtf8Rows() throws IOException {
+
+        //given
+        Path out = tempFile();
+
+        //when
+        tsvUtils.writeTSV(sheet(), out.toString());
+
+        //then
+        Assert.assertEquals(EXPECTED, new String(Files.readAllBytes(out), StandardCharsets.UTF_8));
+        Assert.assertEquals(sheet(), tsvUtils.readCsv(out.toString(), "\t"));
+    }
+
+    @Test
+    public void Given_gzipCompression_When_writeTSVIsCalled_Then_outputIsGzipped() throws IOException {
+
+        //given
+        Path out = tempFile();
+        tsvUtils.setCompression(TsvUtils.Compression.GZIP);
+
+        //when
+        tsvUtils.writeTSV(sheet(), out.toString());
+
+        //then
+        try (InputStream in = new GZIPInputStream(new FileInputStream(out.toFile()))) {
+            Assert.assertEquals(EXPECTED, readFully(in));
+        }
+    }
+
+    @Test
+    public void Given_bgzipCompression_When_writeTSVIsCalled_Then_outputIsBlockCompressed() throws IOException {
+
+        //given
+        Path out = tempFile();
+        tsvUtils.setCompression(TsvUtils.Compression.BGZIP);
+
+        //when
+        tsvUtils.writeTSV(sheet(), out.toString());
+
+        //then
+        Assert.assertTrue(BlockCompressedInputStream.isValidFile(new BufferedInputStream(new FileInputStream(out.toFile()))));
+        try (InputStream in = new BlockCompressedInputStream(out.toFile())) {
+            Assert.assertEquals(EXPECTED, readFully(in));
+        }
+    }
+
+    private ArrayList<ArrayList<String>> sheet() {
+        ArrayList<ArrayList<String>> sheet = new ArrayList<>();
+        sheet.add(new ArrayList<>(Arrays.asList("chromosome", "seq_start_position", "größe")));
+        sheet.add(new ArrayList<>(Arrays.asList("6", "32221046", "")));
+        return sheet;
+    }
+
+    private Path tempFile() throws IOException {
+        Path file = Files.createTempFile("writer", ".lfted");
+        file.toFile().deleteOnExit();
+        return file;
+    }
+
+    private String readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) bytes.write(buffer, 0, read);
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+}